@@ -5,8 +5,11 @@
 package fi.mmm.yhteinen.swing.core;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 
 import org.apache.log4j.Logger;
@@ -15,11 +18,21 @@ import fi.mmm.yhteinen.swing.core.error.YComponentGetValueException;
 import fi.mmm.yhteinen.swing.core.error.YModelGetValueException;
 import fi.mmm.yhteinen.swing.core.error.YModelSetValueException;
 import fi.mmm.yhteinen.swing.core.tools.YCoreToolkit;
+import fi.mmm.yhteinen.swing.core.tools.YProperty;
 import fi.mmm.yhteinen.swing.core.tools.YUIToolkit;
 
 /**
  * Helper class for handling view changes.
  * <p>
+ * If the journal is enabled, the helper keeps a journal of components 
+ * after resetViewChanges. The journal contains components which values 
+ * may have changed (by user or by copying model values to view via controller). 
+ * getChangedComponents compares only those components (and
+ * YISharedModelComponents, which models may change without framework) 
+ * instead of every view component. Values set directly to components 
+ * (not via YController) are not detected with the journal. 
+ * cancelViewChanges always compares all the components.
+ * <p>
  * This class is for YController internal use, do not 
  * override or use directly. 
  * 
@@ -27,11 +40,20 @@ import fi.mmm.yhteinen.swing.core.tools.YUIToolkit;
  */
 public class YChangesHelper {
     
-    private static final String ORIGINAL = "originalModelValue";
-    private static final String ORIGINAL_EXTENDED = "originalExtendedModelValue";
+    private static final String ORIGINAL = YProperty.ORIGINAL_MODEL_VALUE;
+    private static final String ORIGINAL_EXTENDED = YProperty.ORIGINAL_EXTENDED_MODEL_VALUE;
   
     private List changeListeners = new ArrayList();
     
+    private boolean journalEnabled = false;
+    
+    // components which values may have changed after resetViewChanges:
+    private LinkedHashSet changeCandidates = new LinkedHashSet();
+    // YISharedModelComponents, which are always compared:
+    private ArrayList sharedComponents = new ArrayList();
+    // COMPONENT_LIST or component list of the view when journal was started, null if not started:
+    private Object journalComponents;
+    private int journalSize;
 
     private static Logger logger = Logger.getLogger(YChangesHelper.class);
     
@@ -68,6 +90,29 @@ public class YChangesHelper {
     }
 
 
+    /**
+     * Enables or disables the journal of changed components. 
+     * The journal is started in the next resetViewChanges.
+     * 
+     * @param journalEnabled    true if journal should be used 
+     *                          in getChangedComponents
+     */
+    public void setJournalEnabled(boolean journalEnabled) {
+        this.journalEnabled = journalEnabled;
+        if (!journalEnabled) {
+            journalComponents = null;
+            changeCandidates.clear();
+            sharedComponents.clear();
+        }
+    }
+    
+    /**
+     * @return true if the journal of changed components is enabled
+     */
+    public boolean isJournalEnabled() {
+        return journalEnabled;
+    }
+
     /**
      * Resets user changes tracking.  
      * 
@@ -76,7 +121,10 @@ public class YChangesHelper {
         controller.setViewChanged(false);
         YIComponent view = controller.getView();
         if (view != null) {
-            ArrayList components = YUIToolkit.getViewComponents(view);
+            List components = YUIToolkit.getViewComponentList(view);
+            changeCandidates.clear();
+            sharedComponents.clear();
+            journalComponents = null;
             Iterator it = components.iterator();
             while (it.hasNext()) {
                 Object comp = it.next();
@@ -86,11 +134,61 @@ public class YChangesHelper {
                 if (comp instanceof YIExtendedModelComponent) {
                     resetChanges((YIExtendedModelComponent) comp);
                 }
+                if (journalEnabled && comp instanceof YISharedModelComponent) {
+                    sharedComponents.add(comp);
+                }
+            }
+            if (journalEnabled) {
+                journalComponents = getJournalComponents(view, components);
+                journalSize = components.size();
             }
             notifyChangeListenersOfReset();
         }
     }
     
+    /**
+     * Records that value of a component may have changed. 
+     * 
+     * @param comp  the component
+     */
+    void componentChanged(YIComponent comp) {
+        if (journalComponents != null) {
+            changeCandidates.add(comp);
+        }
+    }
+    
+    /**
+     * Returns object that identifies current components of the view.
+     * 
+     * @param view          the view
+     * @param components    the components of the view
+     * @return              COMPONENT_LIST of the view or the given list
+     */
+    private Object getJournalComponents(YIComponent view, List components) {
+        Object componentList = view.getYProperty().get(YIComponent.COMPONENT_LIST);
+        if (componentList != null) {
+            // getViewComponentList returns a copy of COMPONENT_LIST...
+            return componentList;
+        }
+        return components;
+    }
+    
+    /**
+     * @return true if the journal contains all changes of current view components
+     */
+    private boolean isJournalValid() {
+        if (journalComponents == null) {
+            return false;
+        }
+        YIComponent view = controller.getView();
+        if (view == null) {
+            return false;
+        }
+        List components = YUIToolkit.getViewComponentList(view);
+        return journalComponents == getJournalComponents(view, components) && 
+        		journalSize == components.size();
+    }
+    
     
     /**
      * Returns components that have changes (after the last
@@ -99,7 +197,33 @@ public class YChangesHelper {
      * @return list of changed components
      */
     public List getChangedComponents() {
-        ArrayList components = YUIToolkit.getViewComponents(controller.getView());
+        if (!isJournalValid()) {
+            return compareComponents(YUIToolkit.getViewComponentList(controller.getView()));
+        }
+        LinkedHashSet candidates = new LinkedHashSet(changeCandidates);
+        candidates.addAll(sharedComponents);
+        List result = compareComponents(candidates);
+        // components that equal their original values are compared again after next change:
+        changeCandidates.retainAll(new HashSet(result));
+        if (logger.isDebugEnabled()) {
+            // verifying the journal by comparing all components:
+            List allChanges = compareComponents(YUIToolkit.getViewComponentList(controller.getView()));
+            if (allChanges.size() != result.size() || !result.containsAll(allChanges)) {
+                logger.warn("Changed components not found by journal in " + controller.getClass() + 
+                		", component values have been set without YController? " + allChanges);
+                return allChanges;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Compares values of components to values stored in resetViewChanges.
+     * 
+     * @param components	the components to check
+     * @return list of changed components
+     */
+    private List compareComponents(Collection components) {
         Iterator it = components.iterator();
         ArrayList result = new ArrayList();
         while (it.hasNext()) {
@@ -135,7 +259,9 @@ public class YChangesHelper {
      * 
      */ 
     public void cancelViewChanges() {
-        ArrayList components = YUIToolkit.getViewComponents(controller.getView());
+        // only changed components need to be cancelled, all are compared 
+        // since values may have been set without controller:
+        List components = compareComponents(YUIToolkit.getViewComponentList(controller.getView()));
         Iterator it = components.iterator();
         while (it.hasNext()) {
             Object comp = it.next();
@@ -260,6 +386,9 @@ public class YChangesHelper {
         if (hasChanges(comp)) {
           // Object valueToCancel = comp.getModelValue();
            Object originalValue = comp.getYProperty().get(ORIGINAL);
+           if (originalValue instanceof YIModelBaseline) {
+               originalValue = ((YIModelBaseline) originalValue).restoreModel();
+           }
            // setting back original value
            try {
                 comp.setModelValue(originalValue);
@@ -309,7 +438,14 @@ public class YChangesHelper {
      * @param comp the component that holds the value to be stored
      */
     public void resetChanges(YIModelComponent comp) {
-        if (comp instanceof YISharedModelComponent) {
+        YIModelBaseline baseline = null;
+        if (comp instanceof YIBaselineModelComponent) {
+            // copy-on-write baseline instead of cloning the whole model...
+            baseline = ((YIBaselineModelComponent) comp).createBaseline();
+        }
+        if (baseline != null) {
+            comp.getYProperty().put(ORIGINAL, baseline);
+        } else if (comp instanceof YISharedModelComponent) {
             // YISharedModelComponent must implement cloning of 
             // it's internal model...
             comp.getYProperty().put(ORIGINAL, 
@@ -28,6 +28,7 @@ import fi.mmm.yhteinen.swing.core.error.YIErrorHandler;
 import fi.mmm.yhteinen.swing.core.error.YMethodNotFoundException;
 import fi.mmm.yhteinen.swing.core.error.YModelGetValueException;
 import fi.mmm.yhteinen.swing.core.error.YModelSetValueException;
+import fi.mmm.yhteinen.swing.core.savechanges.YChangesRegistry;
 import fi.mmm.yhteinen.swing.core.savechanges.YIChangesEnquirer;
 import fi.mmm.yhteinen.swing.core.tools.YUIToolkit;
 
@@ -70,6 +71,7 @@ public class YController extends YComponent implements Observer {
      * @param view
      */
 	public YController(YModel model, YIComponent view) {
+        YChangesRegistry.controllerCreated(this);
         setModel(model);
         setView(view);
     }
@@ -78,7 +80,7 @@ public class YController extends YComponent implements Observer {
      * Creates a new controller without a model and a view.
      */
     public YController() {
-        
+        YChangesRegistry.controllerCreated(this);
     }
     
   /**
@@ -95,6 +97,8 @@ public class YController extends YComponent implements Observer {
    */
   public void setView(YIComponent view) {
   	  	this.view = view;
+  	  	// components are searched again for the new view:
+  	  	YUIToolkit.invalidateViewComponents(view);
   	  	mvcHelper.addComponentListeners();
   	  	view.getYProperty().put(YIComponent.CONTROLLER, this);
         mvcHelper.wireUp();
@@ -109,15 +113,15 @@ public class YController extends YComponent implements Observer {
     
    
     /**
-     * Sets model for this controller. 
+     * Sets model for this controller. If the model is YModel, 
+     * the controller listens to changes of the fields its 
+     * view components are bound to (or all the changes, if 
+     * modelChanged has been overridden).
        * 
      * @param model the model for this controller.
      */
     public void setModel(Object model) {
     	this.model = model;
-        if (model instanceof YModel) {
-            ((YModel)model).addObserver(this);
-        }
         mvcHelper.wireUp();
     }
     
@@ -212,19 +216,29 @@ public class YController extends YComponent implements Observer {
      * components based on changed model values.
      * 
      * Also framework  uses this for notifying other controllers 
-     * about model changes. 
+     * about model changes. The controller is not an observer of
+     * the model: it's notified via YModelChangeListener only about 
+     * changed fields that are prefixes of the view's MVC names (the
+     * fields copyToView copies), or about all changes if the controller
+     * overrides modelChanged.
      * 
      * DO NOT OVERRIDE THIS METHOD.
      * 
      * @param o		the view model
      * @param arg	the name of the model field that has changed,
-     * 				if null all the fields will be updated
+     * 				if null all the fields will be updated; or 
+     * 				YModelChangeEvent of the changed field
      * @see java.util.Observer#update(java.util.Observable, java.lang.Object)
      */
     public void update(Observable o, Object arg) {
     	// framework internal event for notifying controllers...
         if (arg instanceof YModelChangeEvent) {
-         	this.modelChanged((YModelChangeEvent)arg);
+        	YModelChangeEvent event = (YModelChangeEvent) arg;
+        	if (!event.isUserChange()) {
+        		// change with field values (YModel.notifyObservers(String, Object, Object))
+        		copyToView(event.getFieldName());
+        	}
+         	this.modelChanged(event);
         } else {
         	String fieldName = null;
         	if (arg instanceof String) {
@@ -290,6 +304,31 @@ public class YController extends YComponent implements Observer {
     
   
     
+    /**
+     * Notifies controller that components of the view have been replaced,
+     * or that extended fields of components have changed, after the view or
+     * model was set. Cached components and field name index are discarded.
+     */
+    public void viewComponentsChanged() {
+        if (view != null) {
+            YUIToolkit.invalidateViewComponents(view);
+        }
+        mvcHelper.invalidateNameIndex();
+    }
+    
+    /**
+     * Returns components of the view, which are bound to given
+     * model field (the field is MVC_NAME of the component or
+     * one of its extended fields). Components are indexed by
+     * field name, so this does not check every component of the view.
+     * 
+     * @param fieldName the model field name, for example <code>customer.name</code>
+     * @return          the read-only list of components, empty if not found
+     */
+    public List getBoundComponents(String fieldName) {
+        return mvcHelper.getComponents(fieldName);
+    }
+    
     /**
      * @param comp      the component
      * @return          if component is read only (has YIComponent.READ_ONLY property)
@@ -327,6 +366,7 @@ public class YController extends YComponent implements Observer {
      * @return  true if value was copied
      */
     public boolean copyFromModelToComponent(YIModelComponent comp) {
+        componentValueChanged(comp);
         return mvcHelper.copyFromModelToComponent(comp, this.getModel());
     }
     
@@ -338,6 +378,7 @@ public class YController extends YComponent implements Observer {
      * @return  true if value was copied
      */
 	public boolean copyFromModelToComponent(YIExtendedModelComponent comp, String fieldName) {
+        componentValueChanged(comp);
         return  mvcHelper.copyFromModelToComponent(comp, fieldName, this.getModel());
 	}
     
@@ -398,9 +439,16 @@ public class YController extends YComponent implements Observer {
     /**
      * Returns components that have changes (after the last
      * call to resetViewChanges). 
+     * <p>
+     * If change journal is enabled, only components that user has changed 
+     * or that have been updated from the model (and YISharedModelComponents) 
+     * are compared, so component values should not be set directly by 
+     * the application. With log4j debug level, all components are compared 
+     * and missed changes are logged.
      * 
      * @return list of changed components
      * @see #resetViewChanges() 
+     * @see #setChangeJournalEnabled(boolean)
      */
     public List getChangedComponents() {
         return changesHelper.getChangedComponents();
@@ -409,6 +457,16 @@ public class YController extends YComponent implements Observer {
   
     
     
+    /**
+     * For framework internal use. Records that value of the component 
+     * may differ from the value stored in resetViewChanges.
+     * 
+     * @param comp  the component
+     */
+    void componentValueChanged(YIComponent comp) {
+        changesHelper.componentChanged(comp);
+    }
+    
     /**
      * Checks if user has changed a view component after the last
      * call to resetViewChanges. Note that this method does not call
@@ -435,6 +493,29 @@ public class YController extends YComponent implements Observer {
     public void cancelViewChanges() {
         changesHelper.cancelViewChanges();
     }
+    
+    /**
+     * Enables or disables journal of changed components (disabled by default).
+     * With the journal, getChangedComponents compares only components 
+     * which values have been changed by user or via this controller after
+     * resetViewChanges, instead of all the view components. Journal should 
+     * be enabled only if component values are not set directly by
+     * the application. 
+     * 
+     * @param journalEnabled    true if journal should be used
+     * @see #getChangedComponents()
+     */
+    public void setChangeJournalEnabled(boolean journalEnabled) {
+        changesHelper.setJournalEnabled(journalEnabled);
+    }
+    
+    /**
+     * @return true if journal of changed components is enabled
+     * @see #setChangeJournalEnabled(boolean)
+     */
+    public boolean isChangeJournalEnabled() {
+        return changesHelper.isJournalEnabled();
+    }
 
     /**
      * Checks if component's value hasChanged after the last 
@@ -550,6 +631,58 @@ public class YController extends YComponent implements Observer {
     public void refreshView(Object refreshObject) {
     }
     
+    /**
+     * Loads data for refreshView. The result of this method is passed
+     * to refreshView. If background refresh is on, this method is called
+     * in a background thread and refreshView is called in the event 
+     * dispatch thread when loading is finished. The default implementation 
+     * returns refreshObject.
+     * 
+     * @param refreshObject some object passed by setViewDirty
+     * @return the object to be passed to refreshView
+     * @see #setBackgroundRefresh(boolean)
+     */
+    public Object loadRefreshData(Object refreshObject) {
+    	return refreshObject;
+    }
+    
+    /**
+     * Sets coalescing of setViewDirty calls on or off. When coalescing 
+     * is on, the view is set dirty (and refreshed) later in the event 
+     * dispatch thread, and repeated calls during one event are handled 
+     * only once with the latest refresh object.
+     * 
+     * @param coalesceRefresh	if setViewDirty calls should be coalesced
+     */
+    public void setCoalesceRefresh(boolean coalesceRefresh) {
+    	refreshHelper.setCoalesceRefresh(coalesceRefresh);
+    }
+    
+    /**
+     * @return if setViewDirty calls are coalesced
+     */
+    public boolean isCoalesceRefresh() {
+    	return refreshHelper.isCoalesceRefresh();
+    }
+    
+    /**
+     * Sets background refresh on or off. When background refresh is
+     * on, loadRefreshData is called in a background thread.
+     * 
+     * @param backgroundRefresh	if loadRefreshData should be called in a background thread
+     * @see #loadRefreshData(Object)
+     */
+    public void setBackgroundRefresh(boolean backgroundRefresh) {
+    	refreshHelper.setBackgroundRefresh(backgroundRefresh);
+    }
+    
+    /**
+     * @return if loadRefreshData is called in a background thread
+     */
+    public boolean isBackgroundRefresh() {
+    	return refreshHelper.isBackgroundRefresh();
+    }
+    
     /**
      * This method is for framework internal use.
      * @return  the refresh helper of this controller
@@ -818,7 +951,7 @@ public class YController extends YComponent implements Observer {
      * @return	if view component values match model values
      */
     public boolean viewEqualsModel() {
-    	return (getUnsynchronizedComponents().size() == 0);
+    	return validatorHelper.viewEqualsModel();
     }
     
     /**
@@ -855,7 +988,7 @@ public class YController extends YComponent implements Observer {
      * @return true if all valueValid method of all components return true
      */
     public boolean viewValuesValid() {
-    	return (getInvalidComponents().size() == 0);
+    	return validatorHelper.viewValuesValid();
     }
     
     /**
@@ -888,6 +1021,9 @@ public class YController extends YComponent implements Observer {
      * @param b     if view must be in changed state
      */
     public void setViewChanged(boolean b) {
+        if (this.viewChanges != b) {
+            YChangesRegistry.setViewChanged(this, b);
+        }
         this.viewChanges = b;
     }
     
@@ -911,6 +1047,9 @@ public class YController extends YComponent implements Observer {
      * user changes some field connected to the model,
      * this will be called. Parameter event tells us
      * what kind of change happened.
+     * <p>
+     * If this method is not overridden, the controller listens
+     * to YModel changes only for fields of its view components.
      * 
      * @param event	 the change event
      */
@@ -978,9 +1117,10 @@ public class YController extends YComponent implements Observer {
      * <code>receivedApplicationEvent(YApplicationEvent)</code>
      * 
      * IMPORTANT: This method sets up STATIC listening. If this
-     * controller is used in a window, unregister must be called to free resources
-     * (otherwise there will be memory leak!). Calling unregisterRecursively
-     * for highest parent is usually sufficient.
+     * controller is used in a window, unregister should be called to free resources. 
+     * Calling unregisterRecursively for highest parent is usually sufficient.
+     * The controller is referenced weakly, so a controller that is 
+     * not referenced elsewhere is unregistered when garbage collected.
      * 
      * @param eventName  	the event name
      */
@@ -1023,6 +1163,17 @@ public class YController extends YComponent implements Observer {
     public static void sendApplicationEvent(YApplicationEvent event) {
         YEventHelper.sendApplicationEvent(event);
     }
+    
+    /**
+     * Sends an event to all registered listeners with given delivery mode.
+     * 
+     * @param event 		the event 
+     * @param deliveryMode	YEventHelper.DELIVERY_SYNCHRONOUS, DELIVERY_EDT 
+     * 						or DELIVERY_BACKGROUND
+     */
+    public static void sendApplicationEvent(YApplicationEvent event, int deliveryMode) {
+        YEventHelper.sendApplicationEvent(event, deliveryMode);
+    }
 
     
 	
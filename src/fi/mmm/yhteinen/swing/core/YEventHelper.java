@@ -4,14 +4,31 @@
  */
 package fi.mmm.yhteinen.swing.core;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.SwingUtilities;
+
+import org.apache.log4j.Logger;
 
 /**
  * Helper class for handling events.
  * <p>
+ * Application event listeners are held in a static, thread-safe map.
+ * Controllers are referenced weakly, so a controller that is not
+ * unregistered is removed from the listeners after it has been
+ * garbage collected. Each helper keeps track of it's own subscriptions,
+ * so unregistering doesn't search all the events.
+ * <p>
  * This class is for YController internal use, do not 
  * override or use directly. 
  * 
@@ -19,10 +36,38 @@ import java.util.Iterator;
  */
 public class YEventHelper {
 
+    /**
+     * The delivery mode: listeners receive the event in the calling thread,
+     * before sendApplicationEvent returns (the default).
+     */
+    public static final int DELIVERY_SYNCHRONOUS = 0;
+
+    /**
+     * The delivery mode: listeners receive the event later in the
+     * event dispatch thread.
+     */
+    public static final int DELIVERY_EDT = 1;
+
+    /**
+     * The delivery mode: listeners receive the event in a background thread
+     * (see setBackgroundExecutor).
+     */
+    public static final int DELIVERY_BACKGROUND = 2;
+
+    private static Logger logger = Logger.getLogger(YEventHelper.class);
+
     private YController controller;
 
+    // Subscriptions of this controller (reverse index of eventListeners)
+    private ArrayList subscriptions = new ArrayList(1);
+
     /** static map for application event broadcasting between controllers */
-    private static HashMap eventListeners = new HashMap();
+    private static Map eventListeners = new ConcurrentHashMap();
+
+    // Subscriptions which controllers have been garbage collected
+    private static ReferenceQueue collectedSubscriptions = new ReferenceQueue();
+
+    private static Executor backgroundExecutor;
     
     /**
      * @param controller    the controller using this helper
@@ -40,12 +85,19 @@ public class YEventHelper {
      * @param eventName     the event name
      */
     public void register(String eventName) {
-        ArrayList listeners = (ArrayList) eventListeners.get(eventName);
-        if (listeners == null) {
-            listeners = new ArrayList(1);
+        removeCollectedSubscriptions();
+        Subscription subscription = new Subscription(eventName, controller);
+        synchronized (eventListeners) {
+            List listeners = (List) eventListeners.get(eventName);
+            if (listeners == null) {
+                listeners = new CopyOnWriteArrayList();
+                eventListeners.put(eventName, listeners);
+            }
+            listeners.add(subscription);
+        }
+        synchronized (subscriptions) {
+            subscriptions.add(subscription);
         }
-        listeners.add(controller);
-        eventListeners.put(eventName, listeners);
     }
     
     /**
@@ -55,10 +107,17 @@ public class YEventHelper {
      * @param event     the event to unregister
      */
     public void unregister(String event) {
-         ArrayList listeners = (ArrayList) eventListeners.get(event);
-         if (listeners != null) {
-            listeners.remove(controller);
-         }
+        Subscription subscription = null;
+        synchronized (subscriptions) {
+            for (int i=0; i < subscriptions.size() && subscription == null; i++) {
+                if (((Subscription) subscriptions.get(i)).eventName.equals(event)) {
+                    subscription = (Subscription) subscriptions.remove(i);
+                }
+            }
+        }
+        if (subscription != null) {
+            removeSubscription(subscription);
+        }
     }
     
     /**
@@ -66,13 +125,13 @@ public class YEventHelper {
      * sent via sendApplicationEvent. 
      */
     public void unregister() {
-        Collection values = eventListeners.values();
-        Iterator it = values.iterator();
-        while (it.hasNext()) {
-            ArrayList listeners = (ArrayList) it.next();
-            if (listeners.contains(controller)) {
-                listeners.remove(controller);
-            }
+        Object[] removed;
+        synchronized (subscriptions) {
+            removed = subscriptions.toArray();
+            subscriptions.clear();
+        }
+        for (int i=0; i < removed.length; i++) {
+            removeSubscription((Subscription) removed[i]);
         }
     }
     
@@ -99,23 +158,120 @@ public class YEventHelper {
         }
     }
     
+    /**
+     * Removes subscription from the listeners of it's event.
+     */
+    private static void removeSubscription(Subscription subscription) {
+        synchronized (eventListeners) {
+            List listeners = (List) eventListeners.get(subscription.eventName);
+            if (listeners != null) {
+                listeners.remove(subscription);
+                if (listeners.isEmpty()) {
+                    eventListeners.remove(subscription.eventName);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes subscriptions of garbage collected controllers.
+     */
+    private static void removeCollectedSubscriptions() {
+        Subscription subscription = (Subscription) collectedSubscriptions.poll();
+        while (subscription != null) {
+            removeSubscription(subscription);
+            subscription = (Subscription) collectedSubscriptions.poll();
+        }
+    }
+
     /**
      * Sends an event to all registered listeners.
      * 
      * @param event     the event 
      */
     public static void sendApplicationEvent(YApplicationEvent event) {
-        ArrayList listeners = (ArrayList) eventListeners.get(event.getName());
+        removeCollectedSubscriptions();
+        List listeners = (List) eventListeners.get(event.getName());
         if (listeners != null) {
+            // CopyOnWriteArrayList iterator is a snapshot, listeners
+            // may register and unregister while receiving
             Iterator it = listeners.iterator();
             while (it.hasNext()) {
-                YController listener = (YController) it.next();
-                listener.receivedApplicationEvent(event);
-               
+                YController listener = (YController) ((Subscription) it.next()).get();
+                if (listener != null) {
+                    listener.receivedApplicationEvent(event);
+                }
             }
         }
     }
 
+    /**
+     * Sends an event to all registered listeners with given delivery mode.
+     * In asynchronous modes, the listeners registered when the event
+     * is delivered receive the event.
+     *
+     * @param event         the event
+     * @param deliveryMode  DELIVERY_SYNCHRONOUS, DELIVERY_EDT or DELIVERY_BACKGROUND
+     */
+    public static void sendApplicationEvent(final YApplicationEvent event, int deliveryMode) {
+        Runnable delivery = new Runnable() {
+            public void run() {
+                try {
+                    sendApplicationEvent(event);
+                } catch (RuntimeException ex) {
+                    logger.error("Application event " + event.getName() + " delivery failed.", ex);
+                    throw ex;
+                }
+            }
+        };
+        if (deliveryMode == DELIVERY_EDT) {
+            SwingUtilities.invokeLater(delivery);
+        } else if (deliveryMode == DELIVERY_BACKGROUND) {
+            getBackgroundExecutor().execute(delivery);
+        } else {
+            sendApplicationEvent(event);
+        }
+    }
     
+    /**
+     * @return the executor for DELIVERY_BACKGROUND
+     */
+    public static synchronized Executor getBackgroundExecutor() {
+        if (backgroundExecutor == null) {
+            // events are delivered in one daemon thread in the sending order
+            backgroundExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "YEventHelper");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return backgroundExecutor;
+    }
+
+    /**
+     * Sets the executor for DELIVERY_BACKGROUND. By default, events
+     * are delivered in a single daemon thread.
+     *
+     * @param executor  the executor
+     */
+    public static synchronized void setBackgroundExecutor(Executor executor) {
+        backgroundExecutor = executor;
+    }
+
+    /**
+     * A registration of a controller to an event. The controller
+     * is referenced weakly.
+     */
+    private static class Subscription extends WeakReference {
+
+        private String eventName;
+
+        Subscription(String eventName, YController controller) {
+            super(controller, collectedSubscriptions);
+            this.eventName = eventName;
+        }
+    }
     
 }
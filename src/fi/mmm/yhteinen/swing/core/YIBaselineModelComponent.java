@@ -0,0 +1,22 @@
+/* Copyright (C) 2005 Ministry of Agriculture and Forestry of Finland */
+package fi.mmm.yhteinen.swing.core;
+
+/**
+ * A shared model component that can store the state of it's model 
+ * without cloning the whole model. The baseline is used by 
+ * YController change tracking instead of cloneModel: it is passed to 
+ * equalsModel, and restored in cancelChanges.
+ *
+ * @author Tomi Tuomainen
+ * @see YIModelBaseline
+ */
+public interface YIBaselineModelComponent extends YISharedModelComponent {
+
+    /**
+     * Creates baseline of current component model.
+     * 
+     * @return the baseline, or null if cloneModel should be used instead
+     */
+    public YIModelBaseline createBaseline();
+    
+}
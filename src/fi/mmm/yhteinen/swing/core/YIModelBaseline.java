@@ -0,0 +1,21 @@
+/* Copyright (C) 2005 Ministry of Agriculture and Forestry of Finland */
+package fi.mmm.yhteinen.swing.core;
+
+/**
+ * The stored state of a YIBaselineModelComponent model, which replaces 
+ * the cloned model in change tracking. 
+ * 
+ * @author Tomi Tuomainen
+ * @see YIBaselineModelComponent
+ */
+public interface YIModelBaseline {
+
+    /**
+     * Creates a model in the state it was when this baseline was created.
+     * This is called when changes of the component are cancelled.
+     * 
+     * @return the restored model
+     */
+    public Object restoreModel();
+    
+}
@@ -5,13 +5,20 @@
 package fi.mmm.yhteinen.swing.core;
 
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 
 import fi.mmm.yhteinen.swing.core.error.YMethodNotFoundException;
 import fi.mmm.yhteinen.swing.core.error.YModelGetValueException;
 import fi.mmm.yhteinen.swing.core.error.YModelSetValueException;
 import fi.mmm.yhteinen.swing.core.tools.YCoreToolkit;
+import fi.mmm.yhteinen.swing.core.tools.YProperty;
+import fi.mmm.yhteinen.swing.core.tools.YPropertyAccessor;
 import fi.mmm.yhteinen.swing.core.tools.YUIToolkit;
 
 /**
@@ -26,6 +33,28 @@ public class YMVCHelper {
    
     private YController controller;
     
+    // index of controller's view components by field name, created in wireUp:
+    private YMVCNameIndex nameIndex;
+    // counts MVC_NAME changes of indexed components:
+    private YProperty.MvcNameCounter mvcNameCounter = new YProperty.MvcNameCounter() {
+        protected void mvcNameChanged(String mvcName) {
+            // the controller must hear about the new field before the index is rebuilt:
+            if (mvcName != null) {
+                subscribeField(mvcName);
+            }
+        }
+    };
+    
+    // the model controller listens to, null if none:
+    private YModel subscribedModel;
+    // field paths of modelListener in subscribedModel:
+    private Set subscribedFields = new HashSet();
+    private YModelChangeListener modelListener = new YModelChangeListener() {
+        public void modelChanged(YModelChangeEvent event) {
+            controller.update(subscribedModel, event);
+        }
+    };
+    
     /**
      * 
      * @param controller    the controller using this helper
@@ -42,11 +71,87 @@ public class YMVCHelper {
         Object model = controller.getModel();
         YIComponent view = controller.getView();
         // if both model and view has been set, we can reset view state
+        nameIndex = null;
         if (model != null && view != null) {
+            // components are searched again, getters may create them lazily:
+            YUIToolkit.invalidateViewComponents(view);
+            nameIndex = new YMVCNameIndex(view, mvcNameCounter);
             view.getYProperty().put(YIComponent.MODEL, model);
             controller.copyToView(null); 
             controller.resetViewChanges();
         }
+        subscribeModel();
+    }
+    
+    /**
+     * Subscribes the controller for changes of YModel fields the view 
+     * is bound to. Instead of listening all the changes of the model, 
+     * the controller listens to changes that copyToView copies to 
+     * the view: the fields the view components are bound to and their 
+     * prefixes (copyToView copies fields that start with the changed field).
+     * If the controller overrides modelChanged, it listens to all the 
+     * fields, since modelChanged is called for every change.
+     */
+    private void subscribeModel() {
+        Object model = controller.getModel();
+        YIComponent view = controller.getView();
+        Set fields = new HashSet();
+        if (model instanceof YModel) {
+            if (overridesModelChanged()) {
+                fields.add(YModel.ALL_FIELDS);
+            } else if (view != null) {
+                fields.addAll(getNameIndex(view).getFieldNames());
+            }
+        }
+        if (subscribedModel != model) {
+            unsubscribeFields(subscribedFields);
+            subscribedModel = (model instanceof YModel) ? (YModel) model : null;
+        } else {
+            HashSet removed = new HashSet(subscribedFields);
+            removed.removeAll(fields);
+            unsubscribeFields(removed);
+        }
+        Iterator it = fields.iterator();
+        while (it.hasNext()) {
+            subscribeField((String) it.next());
+        }
+    }
+    
+    private void subscribeField(String fieldPath) {
+        if (subscribedModel != null && !subscribedFields.contains(fieldPath) && 
+                !subscribedFields.contains(YModel.ALL_FIELDS)) {
+            if (fieldPath.equals(YModel.ALL_FIELDS)) {
+                subscribedModel.addModelChangeListener(fieldPath, modelListener);
+            } else {
+                subscribedModel.addPrefixListener(fieldPath, modelListener);
+            }
+            subscribedFields.add(fieldPath);
+        }
+    }
+    
+    private void unsubscribeFields(Set fieldPaths) {
+        Iterator it = new ArrayList(fieldPaths).iterator();
+        while (it.hasNext()) {
+            String fieldPath = (String) it.next();
+            if (fieldPath.equals(YModel.ALL_FIELDS)) {
+                subscribedModel.removeModelChangeListener(fieldPath, modelListener);
+            } else {
+                subscribedModel.removePrefixListener(fieldPath, modelListener);
+            }
+            subscribedFields.remove(fieldPath);
+        }
+    }
+    
+    /**
+     * @return true if the controller class overrides YController.modelChanged
+     */
+    private boolean overridesModelChanged() {
+        try {
+            Method method = controller.getClass().getMethod("modelChanged", new Class[] {YModelChangeEvent.class});
+            return method.getDeclaringClass() != YController.class;
+        } catch (NoSuchMethodException ex) {
+            return true;
+        }
     }
     
     /**
@@ -57,7 +162,7 @@ public class YMVCHelper {
        if (view instanceof YIControllerComponent) {
            ((YIControllerComponent)view).addViewListener(controller);
        }
-       ArrayList components = YUIToolkit.getViewComponents(view);
+       List components = YUIToolkit.getViewComponentList(view);
        Iterator it = components.iterator();
        while (it.hasNext()) {
            Object obj = it.next();
@@ -77,7 +182,11 @@ public class YMVCHelper {
     * @param fieldToUpdate     the model field name to be copied
     */
    void copy(boolean toModel, String fieldToUpdate, YIComponent view, Object model) {
-       ArrayList components = YUIToolkit.getViewComponents(view);
+       if (fieldToUpdate != null && view != null && view == controller.getView()) {
+           copyIndexed(toModel, fieldToUpdate, view, model);
+           return;
+       }
+       List components = YUIToolkit.getViewComponentList(view);
        Iterator it = components.iterator();
        while (it.hasNext()) {
            Object comp = it.next();
@@ -92,6 +201,9 @@ public class YMVCHelper {
                            copyFromComponentToModel(extComp, fieldName, model);
                        } else {
                            copyFromModelToComponent(extComp, fieldName, model);
+                           if (view == controller.getView()) {
+                               controller.componentValueChanged(extComp);
+                           }
                        }
                    }
                }
@@ -105,12 +217,95 @@ public class YMVCHelper {
                        copyFromComponentToModel(modelComponent, model);
                    } else {
                        copyFromModelToComponent(modelComponent, model);
+                       if (view == controller.getView()) {
+                           controller.componentValueChanged(modelComponent);
+                       }
                    }
                }
            }
        }
    }
    
+   /**
+    * Copies fields that start with fieldToUpdate, using the name index
+    * to find the components. Fields are copied in the same order as in copy.
+    * 
+    * @param toModel           if true, component values will be copied to model; 
+    *                          if false, model values will be copied to components
+    * @param fieldToUpdate     the model field name to be copied
+    * @param view              the view of this controller
+    * @param model             the model
+    */
+   private void copyIndexed(boolean toModel, String fieldToUpdate, YIComponent view, Object model) {
+       List bindings = getNameIndex(view).getBindings(fieldToUpdate);
+       for (int i=0; i < bindings.size(); i++) {
+           YMVCNameIndex.Binding binding = (YMVCNameIndex.Binding) bindings.get(i);
+           if (binding.extended) {
+               YIExtendedModelComponent extComp = (YIExtendedModelComponent) binding.component;
+               if (toModel) {
+                   copyFromComponentToModel(extComp, binding.fieldName, model);
+               } else {
+                   copyFromModelToComponent(extComp, binding.fieldName, model);
+                   controller.componentValueChanged(extComp);
+               }
+           } else {
+               YIModelComponent modelComponent = (YIModelComponent) binding.component;
+               if (toModel) {
+                   copyFromComponentToModel(modelComponent, model);
+               } else {
+                   copyFromModelToComponent(modelComponent, model);
+                   controller.componentValueChanged(modelComponent);
+               }
+           }
+       }
+   }
+   
+   /**
+    * Returns the name index of the view, creating it if
+    * view components or their field names have changed.
+    * 
+    * @param view  the view of this controller
+    * @return      the index
+    */
+   private YMVCNameIndex getNameIndex(YIComponent view) {
+       if (nameIndex == null || !nameIndex.isValid(view)) {
+           nameIndex = new YMVCNameIndex(view, mvcNameCounter);
+           if (view == controller.getView()) {
+               subscribeModel();
+           }
+       }
+       return nameIndex;
+   }
+   
+   /**
+    * Discards the name index and creates it again for current
+    * view components. Model subscriptions are updated for the fields.
+    */
+   void invalidateNameIndex() {
+       nameIndex = null;
+       YIComponent view = controller.getView();
+       if (view != null) {
+           getNameIndex(view);
+       } else {
+           subscribeModel();
+       }
+   }
+   
+   /**
+    * Returns components of controller's view, which have given
+    * field name as MVC_NAME or as an extended field.
+    * 
+    * @param fieldName the model field name 
+    * @return          the read-only list of components, empty if not found
+    */
+   List getComponents(String fieldName) {
+       YIComponent view = controller.getView();
+       if (view == null) {
+           return Collections.EMPTY_LIST;
+       }
+       return getNameIndex(view).getComponents(fieldName);
+   }
+   
    /**
     * Checking if fieldName matches field to be updated.
     * 
@@ -147,9 +342,10 @@ public class YMVCHelper {
                    String fieldName = (String) comp.getYProperty().get(YIComponent.MVC_NAME);
                    if (fieldName != null) {
                        Object compValue = comp.getModelValue();
+                       YPropertyAccessor accessor = YPropertyAccessor.getAccessor(fieldName);
                        Object beanValue = null;
                        try {
-                           beanValue = YCoreToolkit.getBeanValue(model, fieldName);
+                           beanValue = YCoreToolkit.getBeanValue(model, accessor);
                        } catch (Exception ex) {
                            controller.modelGetValueFailed(new YModelGetValueException(ex, comp));
                            return false;
@@ -157,7 +353,7 @@ public class YMVCHelper {
                        // if view has changed compared to the model...
                        if (!YCoreToolkit.equals(beanValue, compValue)) {
                            try {
-                               YCoreToolkit.setBeanValue(model, fieldName, compValue);
+                               accessor.setValue(model, compValue);
                                return true;
                            } catch (Exception ex) {
                                controller.modelSetValueFailed(new YModelSetValueException(ex, comp, compValue));
@@ -188,9 +384,10 @@ public class YMVCHelper {
                try {
                    if (fieldName != null) {
                        Object compValue = comp.getModelValue(fieldName);
+                       YPropertyAccessor accessor = YPropertyAccessor.getAccessor(fieldName);
                        Object beanValue = null;
                        try {
-                           beanValue = YCoreToolkit.getBeanValue(model, fieldName);
+                           beanValue = YCoreToolkit.getBeanValue(model, accessor);
                        } catch (Exception ex) {
                            controller.modelGetValueFailed(new YModelGetValueException(ex, comp));
                            return false;
@@ -198,7 +395,7 @@ public class YMVCHelper {
                        // if view has changed compared to the model...
                        if (!YCoreToolkit.equals(beanValue, compValue)) {
                            try {
-                               YCoreToolkit.setBeanValue(model, fieldName, compValue);
+                               accessor.setValue(model, compValue);
                                return true;
                            } catch (Exception ex) {
                                controller.modelSetValueFailed(new YModelSetValueException(ex, comp, compValue));
@@ -367,6 +564,7 @@ public class YMVCHelper {
      * @throws InvocationTargetException exception in method call via reflection
      */
     void triggerChangeEvents(YIComponent comp, String fieldName) throws IllegalArgumentException, YMethodNotFoundException, IllegalAccessException, InvocationTargetException {
+        controller.componentValueChanged(comp);
         controller.setViewChanged(true);
         Object model = controller.getModel();
         if (model instanceof YModel) {
@@ -461,7 +659,7 @@ public class YMVCHelper {
      */
     public void clearView(Class[] classesToIgnore) {
         YIComponent view = controller.getView();
-        ArrayList comps = YUIToolkit.getViewComponents(view);
+        List comps = YUIToolkit.getViewComponentList(view);
         Iterator it = comps.iterator();
         while (it.hasNext()) {
             Object obj = it.next();
@@ -476,6 +674,7 @@ public class YMVCHelper {
                 if (!ignore) {
                     try {
                         comp.setModelValue(null);
+                        controller.componentValueChanged(comp);
                     } catch (Exception ex) {
                         // unexpected exception, this should never happen:
                         controller.handleException(ex);
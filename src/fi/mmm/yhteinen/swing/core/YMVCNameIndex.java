@@ -0,0 +1,193 @@
+/* Copyright (C) 2005 Ministry of Agriculture and Forestry of Finland */
+package fi.mmm.yhteinen.swing.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import fi.mmm.yhteinen.swing.core.tools.YProperty;
+import fi.mmm.yhteinen.swing.core.tools.YUIToolkit;
+
+/**
+ * Index of view components by their model field names (MVC_NAME and
+ * extended fields of YIExtendedModelComponents). YMVCHelper uses the index
+ * to find components for a partial copy without checking every component
+ * of the view.
+ * <p>
+ * The index is valid as long as the view components and MVC names
+ * are not changed. MVC_NAME changes of the indexed components are counted
+ * with a counter of the owning YMVCHelper, so validation doesn't check
+ * the components. Extended fields are read when the index is created.
+ * <p>
+ * This class is for YMVCHelper internal use.
+ *
+ * @author Tomi Tuomainen
+ */
+class YMVCNameIndex {
+
+    private YIComponent view;
+    private List components;
+    private YProperty.MvcNameCounter mvcNameCounter;
+    private int mvcNameCount;
+
+    // field name -> List of Bindings, sorted for prefix searches:
+    private TreeMap sortedBindings = new TreeMap();
+    // field name -> read-only List of components:
+    private HashMap componentsByName = new HashMap();
+
+    /**
+     * Creates the index for current components of the view.
+     *
+     * @param view              the view
+     * @param mvcNameCounter    the counter for MVC_NAME changes of the components
+     */
+    YMVCNameIndex(YIComponent view, YProperty.MvcNameCounter mvcNameCounter) {
+        this.view = view;
+        this.mvcNameCounter = mvcNameCounter;
+        this.components = YUIToolkit.getViewComponentList(view);
+        for (int pos=0; pos < components.size(); pos++) {
+            Object comp = components.get(pos);
+            ((YIComponent) comp).getYProperty().addMvcNameCounter(mvcNameCounter);
+            if (comp instanceof YIExtendedModelComponent) {
+                String[] fieldNames = ((YIExtendedModelComponent) comp).getExtendedFields();
+                for (int i=0; i < fieldNames.length; i++) {
+                    if (fieldNames[i] != null) {
+                        add(new Binding((YIComponent) comp, fieldNames[i], pos, i, true));
+                    }
+                }
+            }
+            if (comp instanceof YIModelComponent) {
+                YIModelComponent modelComp = (YIModelComponent) comp;
+                String mvcName = (String) modelComp.getYProperty().get(YIComponent.MVC_NAME);
+                if (mvcName != null) {
+                    add(new Binding(modelComp, mvcName, pos, Integer.MAX_VALUE, false));
+                }
+            }
+        }
+        // counting after the counter has been added to all components:
+        this.mvcNameCount = mvcNameCounter.getCount();
+        // making component lists read-only:
+        Iterator it = componentsByName.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry entry = (Map.Entry) it.next();
+            entry.setValue(Collections.unmodifiableList((List) entry.getValue()));
+        }
+    }
+
+    private void add(Binding binding) {
+        List bindings = (List) sortedBindings.get(binding.fieldName);
+        if (bindings == null) {
+            bindings = new ArrayList(1);
+            sortedBindings.put(binding.fieldName, bindings);
+        }
+        bindings.add(binding);
+        List comps = (List) componentsByName.get(binding.fieldName);
+        if (comps == null) {
+            comps = new ArrayList(1);
+            componentsByName.put(binding.fieldName, comps);
+        }
+        if (!comps.contains(binding.component)) {
+            comps.add(binding.component);
+        }
+    }
+
+    /**
+     * Checks if this index still describes given view. The index
+     * is not valid, if MVC name of any indexed component has changed,
+     * or if components of the view have changed (cached component 
+     * list of the view has been replaced).
+     *
+     * @param view  the view
+     * @return      true if this index can be used for the view
+     */
+    boolean isValid(YIComponent view) {
+        return view == this.view && mvcNameCount == mvcNameCounter.getCount() &&
+            YUIToolkit.getViewComponentList(view) == components;
+    }
+
+    /**
+     * @return  the field names of the indexed components
+     */
+    Set getFieldNames() {
+        return sortedBindings.keySet();
+    }
+
+    /**
+     * Returns components that have given field name as
+     * MVC_NAME or as an extended field.
+     *
+     * @param fieldName the model field name
+     * @return          the read-only list of components (empty if not found)
+     */
+    List getComponents(String fieldName) {
+        List comps = (List) componentsByName.get(fieldName);
+        if (comps == null) {
+            return Collections.EMPTY_LIST;
+        }
+        return comps;
+    }
+
+    /**
+     * Returns bindings which field name starts with given prefix
+     * (the same rule that YMVCHelper uses for partial copy). Bindings
+     * are returned in the same order as in a full copy: in view component
+     * order, extended fields of a component before its model value.
+     *
+     * @param prefix    the beginning of field name
+     * @return          the bindings
+     */
+    List getBindings(String prefix) {
+        ArrayList result = new ArrayList();
+        // field names starting with prefix are sorted right after the prefix:
+        Iterator it = sortedBindings.tailMap(prefix).entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry entry = (Map.Entry) it.next();
+            if (!((String) entry.getKey()).startsWith(prefix)) {
+                break;
+            }
+            result.addAll((Collection) entry.getValue());
+        }
+        if (result.size() > 1) {
+            Collections.sort(result);
+        }
+        return result;
+    }
+
+    /**
+     * A model field bound to a view component.
+     */
+    static class Binding implements Comparable {
+
+        final YIComponent component;
+        final String fieldName;
+        final boolean extended;
+        private final int position;
+        private final int order;
+
+        Binding(YIComponent component, String fieldName, int position, int order, boolean extended) {
+            this.component = component;
+            this.fieldName = fieldName;
+            this.position = position;
+            this.order = order;
+            this.extended = extended;
+        }
+
+        public int compareTo(Object obj) {
+            Binding other = (Binding) obj;
+            if (position != other.position) {
+                return position < other.position ? -1 : 1;
+            }
+            if (order != other.order) {
+                return order < other.order ? -1 : 1;
+            }
+            return 0;
+        }
+    }
+
+}
@@ -1,27 +1,99 @@
 /* Copyright (C) 2005 Ministry of Agriculture and Forestry of Finland */
 package fi.mmm.yhteinen.swing.core;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Observable;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.swing.SwingUtilities;
 
 /**
  * The model class of the framework. Extend this class to 
  * implement a model.
+ * <p>
+ * By default, notifyObservers calls controllers immediately in the 
+ * current thread. If coalescing notifications are set on, notifications
+ * may be sent from any thread: they are queued and delivered later in 
+ * the event dispatch thread, so that each changed field is 
+ * notified only once during one event dispatch cycle. 
+ * <p>
+ * In addition to observers, which receive all changes, YModelChangeListeners
+ * may be added for certain fields of the model. 
  * 
  * @author Tomi Tuomainen
+ * @see #setCoalesceNotifications(boolean)
+ * @see #addModelChangeListener(String, YModelChangeListener)
  */
 public class YModel extends Observable {
 
+	private boolean coalesceNotifications = false;
+	
+	/**
+	 * The field path for listening changes of all fields.
+	 */
+	public static final String ALL_FIELDS = "*";
+	
+	// the suffix of field path for listening also nested fields:
+	private static final String NESTED_FIELDS = ".*";
+	
+	// queued changed field -> YModelChangeEvent (null if values are not known), guarded by this model:
+	private transient LinkedHashMap pendingFields;
+	// true if whole model change is queued:
+	private transient boolean allFieldsPending;
+	// true if flushNotifications has been queued to event dispatch thread:
+	private transient boolean flushScheduled;
+	
+	// field path -> List of YModelChangeListeners, guarded by this model:
+	private transient TreeMap fieldListeners;
+	// parent field path ("" for all fields) -> List of YModelChangeListeners, guarded by this model:
+	private transient TreeMap nestedFieldListeners;
+	// field path -> List of YModelChangeListeners notified when a prefix of the path changes:
+	private transient TreeMap prefixListeners;
+	
 	public YModel() {
 		super();
 	}
 	
+	/**
+	 * Sets coalescing of notifications on or off. When coalescing is on, 
+	 * notifyObservers methods may be called from any thread. Notifications
+	 * are queued and delivered to controllers in the event dispatch thread
+	 * after currently processed event. Same field is notified only once,
+	 * and a field is not notified separately, if it's parent field
+	 * (or the whole model) is also notified.
+	 * 
+	 * @param coalesceNotifications	true if notifications should be coalesced
+	 */
+	public void setCoalesceNotifications(boolean coalesceNotifications) {
+		this.coalesceNotifications = coalesceNotifications;
+	}
+	
+	/**
+	 * @return true if notifications are coalesced
+	 * @see #setCoalesceNotifications(boolean)
+	 */
+	public boolean isCoalesceNotifications() {
+		return coalesceNotifications;
+	}
+	
 	/**
 	 * Notifies connectected controllers and models about model changes.
 	 * All the fields of the model are considered to have changed.
 	 */
 	 public void notifyObservers() {
-	 	setChanged();
-	 	super.notifyObservers();
+	 	if (coalesceNotifications) {
+	 		queueNotification(null, null);
+	 	} else {
+	 		deliver(null, null);
+	 	}
 	 }
 	 
 	/**
@@ -31,8 +103,30 @@ public class YModel extends Observable {
 	 * @param changedField	the changed field
 	 */
 	 public void notifyObservers(String changedField) {
-	 	setChanged();
-		super.notifyObservers(changedField);
+	 	if (coalesceNotifications) {
+	 		queueNotification(changedField, null);
+	 	} else {
+	 		deliver(changedField, null);
+	 	}
+	 }
+	 
+	/**
+	 * Notifies connectected controllers, models and listeners about a 
+	 * changed field. The old and new value of the field are passed 
+	 * in YModelChangeEvent. Observers receive the YModelChangeEvent
+	 * instead of the field name.
+	 * 
+	 * @param changedField	the changed field, not null
+	 * @param oldValue		the value before change
+	 * @param newValue		the value after change
+	 */
+	 public void notifyObservers(String changedField, Object oldValue, Object newValue) {
+	 	YModelChangeEvent event = new YModelChangeEvent(changedField, oldValue, newValue);
+	 	if (coalesceNotifications) {
+	 		queueNotification(changedField, event);
+	 	} else {
+	 		deliver(changedField, event);
+	 	}
 	 }
 	 
 	 /**
@@ -41,8 +135,375 @@ public class YModel extends Observable {
 	  * @param event the change event
 	  */
 	 void notifyObservers(YModelChangeEvent event) {
+	 	deliver(event.getFieldName(), event);
+	 }
+	 
+	 /**
+	  * Notifies observers and listeners of given field.
+	  * 
+	  * @param changedField	the changed field, null if all fields have changed
+	  * @param event		the event, null if observers should receive the field name
+	  */
+	 private void deliver(String changedField, YModelChangeEvent event) {
 	 	setChanged();
-		super.notifyObservers(event);
+	 	if (event != null) {
+	 		super.notifyObservers(event);
+	 	} else {
+	 		super.notifyObservers(changedField);
+	 	}
+	 	List listeners = getModelChangeListeners(changedField);
+	 	if (!listeners.isEmpty()) {
+	 		if (event == null) {
+	 			event = new YModelChangeEvent();
+	 			event.setFieldName(changedField);
+	 			event.setUserChange(false);
+	 		}
+	 		for (int i=0; i < listeners.size(); i++) {
+	 			((YModelChangeListener) listeners.get(i)).modelChanged(event);
+	 		}
+	 	}
+	 }
+	 
+	 /**
+	  * Adds listener for changes of a field. The listener is notified when 
+	  * the field, one of it's parent fields or the whole model has changed. 
+	  * If the field path ends with <code>.*</code>, for example 
+	  * <code>customer.*</code>, the listener is notified also about changes 
+	  * of any nested field (like <code>customer.address.street</code>). 
+	  * Field path ALL_FIELDS adds listener for all changes.
+	  * <p>
+	  * Listeners are notified after observers in the thread that notified 
+	  * the change (in the event dispatch thread, if notifications are coalesced). 
+	  * 
+	  * @param fieldPath	the field path
+	  * @param listener		the listener
+	  */
+	 public synchronized void addModelChangeListener(String fieldPath, YModelChangeListener listener) {
+	 	String key = getListenerKey(fieldPath);
+	 	Map listenerMap;
+	 	if (!key.equals(fieldPath)) {
+	 		if (nestedFieldListeners == null) {
+	 			nestedFieldListeners = new TreeMap();
+	 		}
+	 		listenerMap = nestedFieldListeners;
+	 	} else {
+	 		if (fieldListeners == null) {
+	 			fieldListeners = new TreeMap();
+	 		}
+	 		listenerMap = fieldListeners;
+	 	}
+	 	addListener(listenerMap, key, listener);
+	 }
+	 
+	 /**
+	  * For framework internal use. Adds listener, which is notified when 
+	  * the field path starts with the changed field (the same rule that 
+	  * YController uses in copyToView), for example for changes of 
+	  * <code>customer</code> and <code>cust</code> when field path is 
+	  * <code>customerName</code>, and when the whole model has changed.
+	  * 
+	  * @param fieldPath	the field path
+	  * @param listener		the listener
+	  */
+	 synchronized void addPrefixListener(String fieldPath, YModelChangeListener listener) {
+	 	if (prefixListeners == null) {
+	 		prefixListeners = new TreeMap();
+	 	}
+	 	addListener(prefixListeners, fieldPath, listener);
+	 }
+	 
+	 /**
+	  * For framework internal use. Removes listener added with addPrefixListener.
+	  * 
+	  * @param fieldPath	the field path given when listener was added
+	  * @param listener		the listener
+	  */
+	 synchronized void removePrefixListener(String fieldPath, YModelChangeListener listener) {
+	 	removeListener(prefixListeners, fieldPath, listener);
+	 }
+	 
+	 private static void addListener(Map listenerMap, String key, YModelChangeListener listener) {
+	 	// lists are replaced instead of modifying them:
+	 	List listeners = (List) listenerMap.get(key);
+	 	ArrayList newListeners = (listeners == null) ? new ArrayList(1) : new ArrayList(listeners);
+	 	newListeners.add(listener);
+	 	listenerMap.put(key, newListeners);
+	 }
+	 
+	 private static void removeListener(Map listenerMap, String key, YModelChangeListener listener) {
+	 	if (listenerMap != null) {
+	 		List listeners = (List) listenerMap.get(key);
+	 		if (listeners != null) {
+	 			ArrayList newListeners = new ArrayList(listeners);
+	 			newListeners.remove(listener);
+	 			if (newListeners.isEmpty()) {
+	 				listenerMap.remove(key);
+	 			} else {
+	 				listenerMap.put(key, newListeners);
+	 			}
+	 		}
+	 	}
+	 }
+	 
+	 /**
+	  * Removes listener added with addModelChangeListener.
+	  * 
+	  * @param fieldPath	the field path given when listener was added
+	  * @param listener		the listener
+	  */
+	 public synchronized void removeModelChangeListener(String fieldPath, YModelChangeListener listener) {
+	 	String key = getListenerKey(fieldPath);
+	 	Map listenerMap = !key.equals(fieldPath) ? nestedFieldListeners : fieldListeners;
+	 	removeListener(listenerMap, key, listener);
+	 }
+	 
+	 /**
+	  * @param fieldPath	the field path of a listener
+	  * @return			the parent field for nested field listeners, otherwise 
+	  * 					the same field path
+	  */
+	 private static String getListenerKey(String fieldPath) {
+	 	if (fieldPath.equals(ALL_FIELDS)) {
+	 		return "";
+	 	} else if (fieldPath.endsWith(NESTED_FIELDS)) {
+	 		return fieldPath.substring(0, fieldPath.length() - NESTED_FIELDS.length());
+	 	}
+	 	return fieldPath;
+	 }
+	 
+	 /**
+	  * Returns listeners interested in a changed field. Only listeners of 
+	  * the field, it's nested fields and parent fields are searched.
+	  * 
+	  * @param changedField	the changed field, null if all fields have changed
+	  * @return				the listeners, each listener only once
+	  */
+	 private synchronized List getModelChangeListeners(String changedField) {
+	 	if (fieldListeners == null && nestedFieldListeners == null && prefixListeners == null) {
+	 		return Collections.EMPTY_LIST;
+	 	}
+	 	ArrayList result = new ArrayList();
+	 	if (changedField == null) {
+	 		// all listeners are notified:
+	 		if (fieldListeners != null) {
+	 			addListeners(result, fieldListeners.values());
+	 		}
+	 		if (nestedFieldListeners != null) {
+	 			addListeners(result, nestedFieldListeners.values());
+	 		}
+	 		if (prefixListeners != null) {
+	 			addListeners(result, prefixListeners.values());
+	 		}
+	 		return result;
+	 	}
+	 	// listeners of the changed field and it's nested fields:
+	 	addNestedListeners(result, fieldListeners, changedField);
+	 	addNestedListeners(result, nestedFieldListeners, changedField);
+	 	// listeners of parent fields, for example "customer.*" when "customer.name" has changed: 
+	 	String parent = getParentField(changedField);
+	 	while (parent != null) {
+	 		if (nestedFieldListeners != null) {
+	 			addListeners(result, (List) nestedFieldListeners.get(parent));
+	 		}
+	 		parent = getParentField(parent);
+	 	}
+	 	// listeners of field paths starting with the changed field:
+	 	if (prefixListeners != null) {
+	 		Iterator it = prefixListeners.tailMap(changedField).entrySet().iterator();
+	 		while (it.hasNext()) {
+	 			Map.Entry entry = (Map.Entry) it.next();
+	 			if (!((String) entry.getKey()).startsWith(changedField)) {
+	 				break;
+	 			}
+	 			addListeners(result, (List) entry.getValue());
+	 		}
+	 	}
+	 	return result;
+	 }
+	 
+	 /**
+	  * Adds listeners of the field and it's nested fields to result.
+	  * 
+	  * @param result		the result list
+	  * @param listenerMap	field path -> List of listeners, may be null
+	  * @param field		the field
+	  */
+	 private static void addNestedListeners(List result, TreeMap listenerMap, String field) {
+	 	if (listenerMap != null) {
+	 		// nested fields are sorted right after the field:
+	 		Iterator it = listenerMap.tailMap(field).entrySet().iterator();
+	 		boolean found = true;
+	 		while (it.hasNext() && found) {
+	 			Map.Entry entry = (Map.Entry) it.next();
+	 			String key = (String) entry.getKey();
+	 			found = key.startsWith(field);
+	 			if (found && isSameOrNested(key, field)) {
+	 				addListeners(result, (List) entry.getValue());
+	 			}
+	 		}
+	 	}
+	 }
+	 
+	 /**
+	  * Adds listeners to result, if they are not already there.
+	  * 
+	  * @param result		the result list
+	  * @param listeners	Collection of listeners or Collection of listener Lists, may be null
+	  */
+	 private static void addListeners(List result, Collection listeners) {
+	 	if (listeners != null) {
+	 		Iterator it = listeners.iterator();
+	 		while (it.hasNext()) {
+	 			Object obj = it.next();
+	 			if (obj instanceof Collection) {
+	 				addListeners(result, (Collection) obj);
+	 			} else if (!result.contains(obj)) {
+	 				result.add(obj);
+	 			}
+	 		}
+	 	}
+	 }
+	 
+	 /**
+	  * @param field		the field name starting with parent
+	  * @param parent	the parent field name
+	  * @return			true if field is the parent or nested field of parent
+	  */
+	 private static boolean isSameOrNested(String field, String parent) {
+	 	if (field.length() == parent.length()) {
+	 		return true;
+	 	}
+	 	char ch = field.charAt(parent.length());
+	 	return ch == '.' || ch == '[' || ch == '(';
+	 }
+	 
+	 /**
+	  * Returns the parent of a field, for example <code>customer.address</code> for
+	  * <code>customer.address.street</code> and <code>customers</code> for 
+	  * <code>customers[1]</code>. The parent of a top level field is "".
+	  * 
+	  * @param field	the field
+	  * @return		the parent field, null for ""
+	  */
+	 private static String getParentField(String field) {
+	 	if (field.length() == 0) {
+	 		return null;
+	 	}
+	 	int pos = Math.max(field.lastIndexOf('.'), Math.max(field.lastIndexOf('['), field.lastIndexOf('(')));
+	 	if (pos == -1) {
+	 		return "";
+	 	}
+	 	return field.substring(0, pos);
+	 }
+	 
+	 /**
+	  * Queues notification of a changed field and schedules
+	  * flushNotifications to event dispatch thread, if not already scheduled.
+	  * 
+	  * @param changedField	the changed field, null if all fields have changed
+	  * @param event			the event with field values, may be null
+	  */
+	 private void queueNotification(String changedField, YModelChangeEvent event) {
+	 	boolean schedule = false;
+	 	synchronized (this) {
+	 		if (changedField == null) {
+	 			allFieldsPending = true;
+	 		} else if (!allFieldsPending) {
+	 			if (pendingFields == null) {
+	 				pendingFields = new LinkedHashMap();
+	 			}
+	 			YModelChangeEvent pending = (YModelChangeEvent) pendingFields.get(changedField);
+	 			if (pending == null) {
+	 				// the field is new or queued without values, 
+	 				// the values of the event are kept:
+	 				if (event != null || !pendingFields.containsKey(changedField)) {
+	 					pendingFields.put(changedField, event);
+	 				}
+	 			} else if (event != null) {
+	 				// keeping the first old value and the last new value:
+	 				pending.setNewValue(event.getNewValue());
+	 			}
+	 		}
+	 		if (!flushScheduled) {
+	 			flushScheduled = true;
+	 			schedule = true;
+	 		}
+	 	}
+	 	if (schedule) {
+	 		SwingUtilities.invokeLater(new Runnable() {
+	 			public void run() {
+	 				flushNotifications();
+	 			}
+	 		});
+	 	}
+	 }
+	 
+	 /**
+	  * Delivers queued notifications to controllers immediately. 
+	  * This is called automatically in the event dispatch thread when 
+	  * coalescing notifications are on, but application may call this 
+	  * in the event dispatch thread to deliver changes before 
+	  * the current event has been processed. 
+	  */
+	 public void flushNotifications() {
+	 	boolean all;
+	 	List fields = null;
+	 	Map events = null;
+	 	synchronized (this) {
+	 		all = allFieldsPending;
+	 		if (!all && pendingFields != null && !pendingFields.isEmpty()) {
+	 			fields = removeNestedFields(pendingFields.keySet());
+	 			events = pendingFields;
+	 		}
+	 		allFieldsPending = false;
+	 		pendingFields = null;
+	 		flushScheduled = false;
+	 	}
+	 	if (all) {
+	 		deliver(null, null);
+	 	} else if (fields != null) {
+	 		for (int i=0; i < fields.size(); i++) {
+	 			String field = (String) fields.get(i);
+	 			deliver(field, (YModelChangeEvent) events.get(field));
+	 		}
+	 	}
+	 }
+	 
+	 /**
+	  * Removes fields that are nested fields of another field in the collection
+	  * (controllers copy all nested fields of the notified field).
+	  * 
+	  * @param fields	the field names
+	  * @return			the fields to be notified, in the original order
+	  */
+	 private static List removeNestedFields(Collection fields) {
+	 	TreeSet sorted = new TreeSet(fields);
+	 	HashSet covered = new HashSet();
+	 	Iterator it = sorted.iterator();
+	 	while (it.hasNext()) {
+	 		String field = (String) it.next();
+	 		if (!covered.contains(field)) {
+	 			// nested fields are sorted right after the field:
+	 			Iterator nested = sorted.tailSet(field, false).iterator();
+	 			boolean found = true;
+	 			while (nested.hasNext() && found) {
+	 				String other = (String) nested.next();
+	 				found = other.startsWith(field);
+	 				if (found && isSameOrNested(other, field)) {
+	 					covered.add(other);
+	 				}
+	 			}
+	 		}
+	 	}
+	 	ArrayList result = new ArrayList(fields.size() - covered.size());
+	 	it = fields.iterator();
+	 	while (it.hasNext()) {
+	 		Object field = it.next();
+	 		if (!covered.contains(field)) {
+	 			result.add(field);
+	 		}
+	 	}
+	 	return result;
 	 }
 
 }
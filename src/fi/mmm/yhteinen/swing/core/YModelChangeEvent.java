@@ -11,6 +11,8 @@ public class YModelChangeEvent {
 
 	private String fieldName;
 	private boolean userChange;
+	private Object oldValue;
+	private Object newValue;
 	
 	/**
 	 * 
@@ -19,6 +21,17 @@ public class YModelChangeEvent {
 		super();
 	}
 	
+	/**
+	 * @param fieldName	mvc-name of the changed field
+	 * @param oldValue	the value before change
+	 * @param newValue	the value after change
+	 */
+	YModelChangeEvent(String fieldName, Object oldValue, Object newValue) {
+		this.fieldName = fieldName;
+		this.oldValue = oldValue;
+		this.newValue = newValue;
+	}
+	
 	/**
 	 * @return mvc-name of the changed field
 	 */
@@ -43,4 +56,24 @@ public class YModelChangeEvent {
 	void setUserChange(boolean userChange) {
 		this.userChange = userChange;
 	}
+	/**
+	 * @return the value of the field before change, null if not known
+	 * @see YModel#notifyObservers(String, Object, Object)
+	 */
+	public Object getOldValue() {
+		return oldValue;
+	}
+	/**
+	 * @return the value of the field after change, null if not known
+	 * @see YModel#notifyObservers(String, Object, Object)
+	 */
+	public Object getNewValue() {
+		return newValue;
+	}
+	/**
+	 * @param newValue the value of the field after change
+	 */
+	void setNewValue(Object newValue) {
+		this.newValue = newValue;
+	}
 }
@@ -0,0 +1,23 @@
+/* Copyright (C) 2005 Ministry of Agriculture and Forestry of Finland */
+package fi.mmm.yhteinen.swing.core;
+
+/**
+ * Listener for changes of certain fields in YModel. 
+ * 
+ * @see YModel#addModelChangeListener(String, YModelChangeListener)
+ * @see YModel#removeModelChangeListener(String, YModelChangeListener)
+ * 
+ * @author Tomi Tuomainen
+ */
+public abstract class YModelChangeListener {
+
+    /**
+     * This method is called when a field the listener was added for
+     * (or a parent field of it) has changed. 
+     * 
+     * @param event     the change event, field name is null if 
+     *                  the whole model has changed
+     */
+    public abstract void modelChanged(YModelChangeEvent event);
+  
+}
@@ -6,12 +6,28 @@ package fi.mmm.yhteinen.swing.core;
 
 import java.awt.Component;
 import java.awt.Container;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.swing.SwingUtilities;
 
 import fi.mmm.yhteinen.swing.core.tools.YUIToolkit;
+import fi.mmm.yhteinen.swing.core.worker.SwingWorker;
 
 /**
  * Helper class for handling dirty/refresh of tabs.
  * <p>
+ * Dirty controllers are kept in a static registry, so refreshing
+ * a view (for example when a tab is selected) checks only the dirty
+ * controllers instead of all components of the view. Controllers
+ * are referenced weakly in the registry.
+ * <p>
  * This class is for YController internal use, do not 
  * override or use directly. 
  * 
@@ -19,12 +35,27 @@ import fi.mmm.yhteinen.swing.core.tools.YUIToolkit;
  */
 public class YRefreshHelper {
 
+    // dirty controllers -> DirtyEntry (accessed in the event dispatch thread)
+    private static Map dirtyControllers = new WeakHashMap();
+    private static long dirtySequence = 0;
+
     private YController controller;
     
     private boolean dirty = false;
     
     private Object refreshData = null;
     
+    private boolean coalesceRefresh = false;
+
+    private boolean backgroundRefresh = false;
+
+    // the latest refreshData of coalesced setViewDirty calls
+    private Object pendingRefreshData = null;
+    private boolean refreshScheduled = false;
+
+    // the number of started refreshes, a background result
+    // of an older refresh is ignored
+    private int refreshCount = 0;
 
     /**
      * @param controller    the controller using this helper.
@@ -41,10 +72,48 @@ public class YRefreshHelper {
      * methods of child component controllers) will be called. However, 
      * if the view is in a tabbed pane tab, that is not currently selected, 
      * the refreshView is not called until the tab will be selected. 
+     * <p>
+     * If coalesceRefresh is on, the view is set dirty later in the event
+     * dispatch thread, and several calls during one event are handled once
+     * (with the latest refreshData).
      * 
      * @param refreshData   some object to be passed to refreshView method
      */
     public void setViewDirty(Object refreshData) {
+        if (coalesceRefresh) {
+            boolean schedule = false;
+            synchronized (this) {
+                pendingRefreshData = refreshData;
+                if (!refreshScheduled) {
+                    refreshScheduled = true;
+                    schedule = true;
+                }
+            }
+            if (schedule) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        Object data;
+                        synchronized (YRefreshHelper.this) {
+                            data = pendingRefreshData;
+                            pendingRefreshData = null;
+                            refreshScheduled = false;
+                        }
+                        markViewDirty(data);
+                    }
+                });
+            }
+        } else {
+            markViewDirty(refreshData);
+        }
+    }
+
+    /**
+     * Sets the view and child views dirty, and refreshes
+     * them if the view is visible.
+     *
+     * @param refreshData   some object to be passed to refreshView method
+     */
+    private void markViewDirty(Object refreshData) {
         YIComponent view = controller.getView();
         setDirtyRecursively(view, refreshData);
         if (view instanceof Component && 
@@ -67,6 +136,7 @@ public class YRefreshHelper {
             if (controller != null) {
                 controller.getRefreshHelper().refreshData = refreshData;
                 controller.getRefreshHelper().dirty = true;
+                addDirty(controller, comp);
             }
         }
         if (comp instanceof Container) {
@@ -87,7 +157,12 @@ public class YRefreshHelper {
      *                     refreshView is called only if view is "dirty"
      */
     public void startViewRefresh(boolean forceRefresh) {
-        refreshRecursively(controller.getView(), forceRefresh);
+        Object view = controller.getView();
+        if (forceRefresh || !(view instanceof Component)) {
+            refreshRecursively(view, forceRefresh);
+        } else {
+            refreshDirty((Component) view);
+        }
     }
     
     /**
@@ -103,8 +178,7 @@ public class YRefreshHelper {
             if (controller != null) {
                 if (forceRefresh || 
                     (controller.getRefreshHelper().dirty && YUIToolkit.currentlyVisible((Component)comp))) {
-                    controller.refreshView(controller.getRefreshHelper().refreshData);
-                    controller.getRefreshHelper().dirty = false;
+                    controller.getRefreshHelper().refresh();
                 }
             }
         }
@@ -118,6 +192,86 @@ public class YRefreshHelper {
         }
    }
 
+    /**
+     * Refreshes dirty and visible controllers which views are in
+     * the given view (in the order they were set dirty).
+     *
+     * @param view  the view to be refreshed
+     */
+    private void refreshDirty(Component view) {
+        List entries;
+        synchronized (dirtyControllers) {
+            if (dirtyControllers.isEmpty()) {
+                return;
+            }
+            entries = new ArrayList(dirtyControllers.values());
+        }
+        Collections.sort(entries, DIRTY_ORDER);
+        Iterator it = entries.iterator();
+        while (it.hasNext()) {
+            DirtyEntry entry = (DirtyEntry) it.next();
+            Component comp = (Component) entry.component.get();
+            YController dirtyController = (comp == null) ? null : YUIToolkit.getController((YIComponent) comp);
+            if (dirtyController != null && dirtyController.getRefreshHelper().dirty &&
+                    (comp == view || SwingUtilities.isDescendingFrom(comp, view)) &&
+                    YUIToolkit.currentlyVisible(comp)) {
+                dirtyController.getRefreshHelper().refresh();
+            }
+        }
+    }
+
+    /**
+     * Calls refreshView of the controller and clears dirty state. If
+     * backgroundRefresh is on, loadRefreshData is called in
+     * a background thread before refreshView.
+     */
+    private void refresh() {
+        final Object data = refreshData;
+        final int count = ++refreshCount;
+        if (!backgroundRefresh) {
+            controller.refreshView(controller.loadRefreshData(data));
+        } else {
+            SwingWorker worker = new SwingWorker() {
+                private Throwable error;
+                public Object construct() {
+                    try {
+                        return controller.loadRefreshData(data);
+                    } catch (Throwable t) {
+                        error = t;
+                        return null;
+                    }
+                }
+                public void finished() {
+                    if (count != refreshCount) {
+                        return; // a newer refresh has been started
+                    }
+                    if (error instanceof Exception) {
+                        controller.handleException((Exception) error);
+                    } else if (error instanceof Error) {
+                        throw (Error) error;
+                    } else {
+                        controller.refreshView(get());
+                    }
+                }
+            };
+            worker.start();
+        }
+        dirty = false;
+        removeDirty(controller);
+    }
+
+    private static void addDirty(YController controller, Object comp) {
+        synchronized (dirtyControllers) {
+            dirtyControllers.put(controller, new DirtyEntry(comp, dirtySequence++));
+        }
+    }
+
+    private static void removeDirty(YController controller) {
+        synchronized (dirtyControllers) {
+            dirtyControllers.remove(controller);
+        }
+    }
+
     /**
      * 
      * @return  if controller of this helper is dirty and needs to be refreshed
@@ -126,6 +280,56 @@ public class YRefreshHelper {
         return dirty;
     }
     
+    /**
+     * @return if setViewDirty calls are coalesced
+     */
+    public boolean isCoalesceRefresh() {
+        return coalesceRefresh;
+    }
+
+    /**
+     * @param coalesceRefresh   if setViewDirty calls should be coalesced
+     * @see #setViewDirty(Object)
+     */
+    public void setCoalesceRefresh(boolean coalesceRefresh) {
+        this.coalesceRefresh = coalesceRefresh;
+    }
+
+    /**
+     * @return if loadRefreshData is called in a background thread
+     */
+    public boolean isBackgroundRefresh() {
+        return backgroundRefresh;
+    }
+
+    /**
+     * @param backgroundRefresh if loadRefreshData should be called in a background thread
+     */
+    public void setBackgroundRefresh(boolean backgroundRefresh) {
+        this.backgroundRefresh = backgroundRefresh;
+    }
+
+    /**
+     * The component of a dirty controller and the order
+     * in which it was set dirty. The component is referenced
+     * weakly, since it references the controller (the registry key).
+     */
+    private static class DirtyEntry {
+        private WeakReference component;
+        private long sequence;
+
+        DirtyEntry(Object component, long sequence) {
+            this.component = new WeakReference(component);
+            this.sequence = sequence;
+        }
+    }
+
+    private static final Comparator DIRTY_ORDER = new Comparator() {
+        public int compare(Object o1, Object o2) {
+            long s1 = ((DirtyEntry) o1).sequence;
+            long s2 = ((DirtyEntry) o2).sequence;
+            return s1 < s2 ? -1 : (s1 == s2 ? 0 : 1);
+        }
+    };
        
 }
-
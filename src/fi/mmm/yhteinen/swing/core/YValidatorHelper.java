@@ -17,6 +17,11 @@ import fi.mmm.yhteinen.swing.core.tools.YUIToolkit;
 /**
  * Helper class for controller validation.
  * <p>
+ * Synchronized/unsynchronized and valid/invalid components are
+ * found in one pass over the view. Results are not reused between 
+ * calls, since component values may be changed programmatically
+ * without notifying the controller.
+ * <p>
  * This class is for YController internal use, do not 
  * override or use directly. 
  * 
@@ -86,100 +91,130 @@ public class YValidatorHelper {
       }
       
       /**
-       * Returns view componenents that implement YIModelComponent interface
-       * and that are synchronized with a view model.
-       * A component and corresponding model field might be unsynchronized
-       * because component or model may throw an exception during get/set-method
-       * call. 
+       * Returns view components split into synchronized and unsynchronized 
+       * components. All components are checked in one pass.
        * 
-       * @return    the components which values equal corresponding model field values
+       * @return    the snapshot
        */
-      public ArrayList getSynchronizedComponents() {
+      private Snapshot getSynchronizedSnapshot() {
           YIComponent view = controller.getView();
-          ArrayList unsynchronized = getUnsynchronizedComponents();
-          ArrayList comps = YUIToolkit.getViewComponents(view);
-          ArrayList result = new ArrayList(comps.size());
+          Object model = controller.getModel();
+          List comps = YUIToolkit.getViewComponentList(view);
+          Snapshot snapshot = new Snapshot(comps.size());
           Iterator it = comps.iterator();
           while (it.hasNext()) {
               Object obj = (Object) it.next();
               if (obj instanceof YIModelComponent) {
                   YIModelComponent comp = (YIModelComponent) obj;
-                  if (! unsynchronized.contains(comp)) {
-                      result.add(comp);
+                  if (isSynchronized(comp, model)) {
+                      snapshot.accepted.add(comp);
+                  } else {
+                      snapshot.rejected.add(comp);
                   }
               }
           }
-          return result;
+          return snapshot;
       }
       
       /**
-       * Returns view componenents that implement YIModelComponent interface
-       * and that are not synchronized with a view model.
-       * A component and corresponding model field might be unsynchronized
-       * because component or model may throw an exception during get/set-method
-       * call. 
+       * Checks if component value equals corresponding model field value.
        * 
-       * @return    the components which values are different 
-       *            from corresponding model field values
+       * @param comp    the component
+       * @param model   the model
+       * @return        false if values are different or reading the component failed
        */
-      public ArrayList getUnsynchronizedComponents() {
-          YIComponent view = controller.getView();
-          Object model = controller.getModel();
-          ArrayList result = new ArrayList();
+      private boolean isSynchronized(YIModelComponent comp, Object model) {
+          if (model == null) {
+              return true;
+          }
+          String fieldName = (String) comp.getYProperty().get(YIComponent.MVC_NAME);
+          if (fieldName == null) {
+              return true;
+          }
           try {
-              ArrayList comps = YUIToolkit.getViewComponents(view);
-              Iterator it = comps.iterator();
-              while (it.hasNext()) {
-                  Object obj = (Object) it.next();
-                  if (obj instanceof YIModelComponent) {
-                      YIModelComponent comp = (YIModelComponent) obj;
-                      Object compValue = comp.getModelValue();
-                      Object beanValue = null;
-                      if (model != null) {
-                          String fieldName = (String) comp.getYProperty().get(YIComponent.MVC_NAME);
-                          if (fieldName != null) {
-                              try {
-                                  beanValue = YCoreToolkit.getBeanValue(model, fieldName);
-                              } catch (Exception ex) {
-                                  controller.modelGetValueFailed(new YModelGetValueException(
-                                          ex, comp));
-                              }
-                              if (!YCoreToolkit.equals(beanValue, compValue)) {
-                                  result.add(comp);
-                              }
-                          }
-                      }
-                  }
+              Object compValue = comp.getModelValue();
+              Object beanValue = null;
+              try {
+                  beanValue = YCoreToolkit.getBeanValue(model, fieldName);
+              } catch (Exception ex) {
+                  controller.modelGetValueFailed(new YModelGetValueException(
+                          ex, comp));
               }
+              return YCoreToolkit.equals(beanValue, compValue);
           } catch (Exception e) {
               controller.handleException(e);
+              return false;
           }
-          return result;
       }
       
-
-      
       /**
-       * Returns view components that implement YIValidatorComponent 
-       * interface and return false when valueValid method is called. 
+       * Returns view components split into valid and invalid 
+       * YIValidatorComponents. All components are checked in one pass.
        * 
-       * @return     the invalid components
+       * @return    the snapshot
        */
-      public List getInvalidComponents() {
-          YIComponent view = controller.getView();
-          ArrayList result = new ArrayList();
-          ArrayList comps = YUIToolkit.getViewComponents(view);
+      private Snapshot getValidSnapshot() {
+          List comps = YUIToolkit.getViewComponentList(controller.getView());
+          Snapshot snapshot = new Snapshot(comps.size());
           Iterator it = comps.iterator();
           while (it.hasNext()) {
               Object obj = (Object) it.next();
               if (obj instanceof YIValidatorComponent) {
                   YIValidatorComponent comp = (YIValidatorComponent) obj;
-                  if (!comp.valueValid()) {
-                      result.add(comp);
+                  if (comp.valueValid()) {
+                      snapshot.accepted.add(comp);
+                  } else {
+                      snapshot.rejected.add(comp);
                   }
               }
           }
-          return result;
+          return snapshot;
+      }
+      
+      /**
+       * Returns view componenents that implement YIModelComponent interface
+       * and that are synchronized with a view model.
+       * A component and corresponding model field might be unsynchronized
+       * because component or model may throw an exception during get/set-method
+       * call. 
+       * 
+       * @return    the components which values equal corresponding model field values
+       */
+      public ArrayList getSynchronizedComponents() {
+          return new ArrayList(getSynchronizedSnapshot().accepted);
+      }
+      
+      /**
+       * Returns view componenents that implement YIModelComponent interface
+       * and that are not synchronized with a view model.
+       * A component and corresponding model field might be unsynchronized
+       * because component or model may throw an exception during get/set-method
+       * call. 
+       * 
+       * @return    the components which values are different 
+       *            from corresponding model field values
+       */
+      public ArrayList getUnsynchronizedComponents() {
+          return new ArrayList(getSynchronizedSnapshot().rejected);
+      }
+      
+      /**
+       * Checks if view component values equals model values.
+       * 
+       * @return  if view component values match model values
+       */
+      public boolean viewEqualsModel() {
+          return getSynchronizedSnapshot().rejected.isEmpty();
+      }
+      
+      /**
+       * Returns view components that implement YIValidatorComponent 
+       * interface and return false when valueValid method is called. 
+       * 
+       * @return     the invalid components
+       */
+      public List getInvalidComponents() {
+          return new ArrayList(getValidSnapshot().rejected);
       }
       
       /**
@@ -189,22 +224,31 @@ public class YValidatorHelper {
        * @return     the valid components
        */
       public Collection getValidComponents() {
-          YIComponent view = controller.getView();
-          ArrayList result = new ArrayList();
-          ArrayList comps = YUIToolkit.getViewComponents(view);
-          Iterator it = comps.iterator();
-          while (it.hasNext()) {
-              Object obj = (Object) it.next();
-              if (obj instanceof YIValidatorComponent) {
-                  YIValidatorComponent comp = (YIValidatorComponent) obj;
-                  if (comp.valueValid()) {
-                      result.add(comp);
-                  }
-              }
-          }
-          return result;
+          return new ArrayList(getValidSnapshot().accepted);
       }
       
+      /**
+       * Checks if view components that implement YIValidatorComponent
+       * are all in valid state.
+       * 
+       * @return true if all valueValid method of all components return true
+       */
+      public boolean viewValuesValid() {
+          return getValidSnapshot().rejected.isEmpty();
+      }
+      
+      /**
+       * Components of the view split in two lists (synchronized and
+       * unsynchronized, or valid and invalid).
+       */
+      private static class Snapshot {
+          private ArrayList accepted;
+          private ArrayList rejected = new ArrayList(0);
+          
+          Snapshot(int componentCount) {
+              this.accepted = new ArrayList(componentCount);
+          }
+      }
     
     
 }
@@ -0,0 +1,277 @@
+/* Copyright (C) 2005 Ministry of Agriculture and Forestry of Finland */
+package fi.mmm.yhteinen.swing.core.binding;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Annotation processor that generates bindings for classes annotated
+ * with YGenerateBinding.
+ * <p>
+ * The processor is registered in <code>META-INF/services</code> of
+ * tikeswing.jar, so javac discovers it in every project that compiles
+ * against the jar (when no processor path is given). The processor
+ * only handles classes annotated with YGenerateBinding and does nothing
+ * for other sources. Discovery can be turned off with javac option
+ * <code>-proc:none</code> or by listing processors explicitly with
+ * <code>-processor</code>.
+ * <p>
+ * For a view class, the generated binding calls the public get-methods
+ * returning YIComponent. For a controller class, the binding invokes
+ * public methods without parameters declared in the controller class
+ * and its super classes below YController (methods of YController itself
+ * are left to reflection). Only methods with modifier <code>public</code>
+ * and no other modifiers are included, like in reflection used by
+ * YUIToolkit and YCoreToolkit.
+ *
+ * @author Tomi Tuomainen
+ * @see YGenerateBinding
+ * @see YBindings
+ */
+@SupportedAnnotationTypes("fi.mmm.yhteinen.swing.core.binding.YGenerateBinding")
+public class YBindingProcessor extends AbstractProcessor {
+
+	private static final String COMPONENT_CLASS = "fi.mmm.yhteinen.swing.core.YIComponent";
+	private static final String CONTROLLER_CLASS = "fi.mmm.yhteinen.swing.core.YController";
+
+	private static final Set PUBLIC_ONLY = EnumSet.of(Modifier.PUBLIC);
+
+	/*
+	 *  (non-Javadoc)
+	 * @see javax.annotation.processing.AbstractProcessor#getSupportedSourceVersion()
+	 */
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	/*
+	 *  (non-Javadoc)
+	 * @see javax.annotation.processing.AbstractProcessor#process(java.util.Set, javax.annotation.processing.RoundEnvironment)
+	 */
+	public boolean process(Set annotations, RoundEnvironment roundEnv) {
+		Iterator it = roundEnv.getElementsAnnotatedWith(YGenerateBinding.class).iterator();
+		while (it.hasNext()) {
+			Element element = (Element) it.next();
+			if (element.getKind() != ElementKind.CLASS) {
+				error(element, "YGenerateBinding is allowed only for classes.");
+			} else {
+				generate((TypeElement) element);
+			}
+		}
+		return true;
+	}
+
+	private void generate(TypeElement type) {
+		if (!isAccessible(type)) {
+			warning(type, "Binding is not generated for a private class, using reflection.");
+			return;
+		}
+		boolean controller = isSubtype(type, CONTROLLER_CLASS);
+		boolean view = isSubtype(type, COMPONENT_CLASS) && !controller;
+		if (!view && !controller) {
+			error(type, "YGenerateBinding class must be YIComponent or YController.");
+			return;
+		}
+		String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+		// same naming as YBindings.getBindingClassName (YBindings is not used here, 
+		// since it needs log4j which may not be in the processor path)
+		String bindingName = binaryName.replace('$', '_') + YBindings.BINDING_SUFFIX;
+		String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+		String simpleName = bindingName.substring(bindingName.lastIndexOf('.') + 1);
+		String typeName = type.getQualifiedName().toString();
+		try {
+			PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(bindingName, new Element[] {type}).openWriter());
+			try {
+				if (packageName.length() > 0) {
+					out.println("package " + packageName + ";");
+					out.println();
+				}
+				out.println("/**");
+				out.println(" * Binding for " + typeName + ", generated by YBindingProcessor. Do not edit.");
+				out.println(" */");
+				out.println("@SuppressWarnings({\"rawtypes\", \"unchecked\"})");
+				out.print("public class " + simpleName + " implements ");
+				if (view) {
+					out.print("fi.mmm.yhteinen.swing.core.binding.YIViewBinding");
+				}
+				if (controller) {
+					out.print(view ? ", " : "");
+					out.print("fi.mmm.yhteinen.swing.core.binding.YIControllerBinding");
+				}
+				out.println(" {");
+				if (view) {
+					writeViewMethods(out, type, typeName);
+				}
+				if (controller) {
+					writeControllerMethods(out, type, typeName);
+				}
+				out.println("}");
+			} finally {
+				out.close();
+			}
+		} catch (IOException ex) {
+			error(type, "Binding could not be generated: " + ex);
+		}
+	}
+
+	private void writeViewMethods(PrintWriter out, TypeElement type, String typeName) {
+		Map getters = findMethods(type, true);
+		out.println();
+		out.println("    public java.util.List getComponents(fi.mmm.yhteinen.swing.core.YIComponent component) {");
+		out.println("        " + typeName + " view = (" + typeName + ") component;");
+		out.println("        java.util.ArrayList result = new java.util.ArrayList(" + getters.size() + ");");
+		Iterator it = getters.keySet().iterator();
+		while (it.hasNext()) {
+			out.println("        add(result, view." + it.next() + "());");
+		}
+		out.println("        return result;");
+		out.println("    }");
+		out.println();
+		out.println("    private static void add(java.util.List list, Object comp) {");
+		out.println("        if (comp != null) {");
+		out.println("            list.add(comp);");
+		out.println("        }");
+		out.println("    }");
+	}
+
+	private void writeControllerMethods(PrintWriter out, TypeElement type, String typeName) {
+		Map methods = findMethods(type, false);
+		out.println();
+		out.println("    private static final java.util.Set METHODS = new java.util.HashSet(java.util.Arrays.asList(new String[] {");
+		Iterator it = methods.keySet().iterator();
+		while (it.hasNext()) {
+			out.println("        \"" + it.next() + "\",");
+		}
+		out.println("    }));");
+		out.println();
+		out.println("    public boolean hasMethod(String methodName) {");
+		out.println("        return METHODS.contains(methodName);");
+		out.println("    }");
+		out.println();
+		out.println("    public Object invoke(Object obj, String methodName) throws java.lang.reflect.InvocationTargetException {");
+		out.println("        " + typeName + " controller = (" + typeName + ") obj;");
+		out.println("        try {");
+		out.println("            switch (methodName) {");
+		it = methods.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry entry = (Map.Entry) it.next();
+			ExecutableElement method = (ExecutableElement) entry.getValue();
+			out.println("            case \"" + entry.getKey() + "\":");
+			if (method.getReturnType().getKind() == TypeKind.VOID) {
+				out.println("                controller." + entry.getKey() + "();");
+				out.println("                return null;");
+			} else {
+				out.println("                return controller." + entry.getKey() + "();");
+			}
+		}
+		out.println("            }");
+		out.println("        } catch (Throwable t) {");
+		out.println("            throw new java.lang.reflect.InvocationTargetException(t);");
+		out.println("        }");
+		out.println("        throw new IllegalArgumentException(\"Method \" + methodName + \" not found in " + typeName + "\");");
+		out.println("    }");
+	}
+
+	/**
+	 * Finds public methods without parameters from the class and it's super classes.
+	 *
+	 * @param type		the class
+	 * @param getters	if true, only getters returning YIComponent are searched
+	 * 					from YIComponent classes; otherwise all methods are searched
+	 * 					from classes below YController
+	 * @return			method name -> ExecutableElement, the first declaration found
+	 */
+	private Map findMethods(TypeElement type, boolean getters) {
+		LinkedHashMap result = new LinkedHashMap();
+		TypeElement current = type;
+		while (current != null && !current.getQualifiedName().contentEquals("java.lang.Object")) {
+			if (getters && !isSubtype(current, COMPONENT_CLASS)) {
+				break;
+			}
+			if (!getters && current.getQualifiedName().contentEquals(CONTROLLER_CLASS)) {
+				break;
+			}
+			List methods = ElementFilter.methodsIn(current.getEnclosedElements());
+			for (int i=0; i < methods.size(); i++) {
+				ExecutableElement method = (ExecutableElement) methods.get(i);
+				String name = method.getSimpleName().toString();
+				if (method.getModifiers().equals(PUBLIC_ONLY) &&
+						method.getParameters().isEmpty() &&
+						method.getTypeParameters().isEmpty() &&
+						!result.containsKey(name)) {
+					if (!getters || (name.startsWith("get") && isSubtype(method.getReturnType(), COMPONENT_CLASS))) {
+						result.put(name, method);
+					}
+				}
+			}
+			TypeMirror superClass = current.getSuperclass();
+			if (superClass.getKind() == TypeKind.DECLARED) {
+				current = (TypeElement) ((DeclaredType) superClass).asElement();
+			} else {
+				current = null;
+			}
+		}
+		return result;
+	}
+
+	private boolean isAccessible(TypeElement type) {
+		Element element = type;
+		while (element instanceof TypeElement) {
+			if (element.getModifiers().contains(Modifier.PRIVATE) ||
+					((TypeElement) element).getNestingKind() == NestingKind.LOCAL ||
+					((TypeElement) element).getNestingKind() == NestingKind.ANONYMOUS) {
+				return false;
+			}
+			element = element.getEnclosingElement();
+		}
+		return true;
+	}
+
+	private boolean isSubtype(TypeElement type, String className) {
+		return isSubtype(type.asType(), className);
+	}
+
+	private boolean isSubtype(TypeMirror type, String className) {
+		if (type.getKind() != TypeKind.DECLARED) {
+			return false;
+		}
+		TypeElement superType = processingEnv.getElementUtils().getTypeElement(className);
+		if (superType == null) {
+			return false;
+		}
+		return processingEnv.getTypeUtils().isAssignable(
+				processingEnv.getTypeUtils().erasure(type),
+				processingEnv.getTypeUtils().erasure(superType.asType()));
+	}
+
+	private void error(Element element, String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+	}
+
+	private void warning(Element element, String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, message, element);
+	}
+
+}
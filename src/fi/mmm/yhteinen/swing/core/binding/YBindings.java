@@ -0,0 +1,100 @@
+/* Copyright (C) 2005 Ministry of Agriculture and Forestry of Finland */
+package fi.mmm.yhteinen.swing.core.binding;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Finds bindings generated by YBindingProcessor. A binding class
+ * is searched only once for each class. If a class has no generated 
+ * binding, framework uses reflection.
+ * 
+ * @author Tomi Tuomainen
+ * @see YGenerateBinding
+ */
+public class YBindings {
+
+	/**
+	 * The suffix of generated binding class names.
+	 */
+	public static final String BINDING_SUFFIX = "_YBinding";
+	
+	private static Logger logger = Logger.getLogger(YBindings.class);
+	
+	// marker for classes without binding
+	private static final Object NO_BINDING = new Object();
+	
+	// class -> binding instance or NO_BINDING
+	private static final Map bindings = new ConcurrentHashMap();
+	
+	/**
+	 * @param viewClass	the view class
+	 * @return			the generated binding of the class, or null if not found
+	 */
+	public static YIViewBinding getViewBinding(Class viewClass) {
+		Object binding = getBinding(viewClass);
+		if (binding instanceof YIViewBinding) {
+			return (YIViewBinding) binding;
+		}
+		return null;
+	}
+	
+	/**
+	 * @param controllerClass	the controller class
+	 * @return					the generated binding of the class, or null if not found
+	 */
+	public static YIControllerBinding getControllerBinding(Class controllerClass) {
+		Object binding = getBinding(controllerClass);
+		if (binding instanceof YIControllerBinding) {
+			return (YIControllerBinding) binding;
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns the name of the binding class generated for given class. 
+	 * For example <code>app.CustomerView</code> has binding 
+	 * <code>app.CustomerView_YBinding</code> and nested class 
+	 * <code>app.Outer$Inner</code> has binding <code>app.Outer_Inner_YBinding</code>.
+	 *  
+	 * @param className	binary name of the class
+	 * @return			the name of the binding class
+	 */
+	public static String getBindingClassName(String className) {
+		return className.replace('$', '_') + BINDING_SUFFIX;
+	}
+	
+	private static Object getBinding(Class aClass) {
+		Object binding = bindings.get(aClass);
+		if (binding == null) {
+			binding = loadBinding(aClass);
+			bindings.put(aClass, binding);
+		}
+		return (binding == NO_BINDING) ? null : binding;
+	}
+	
+	private static Object loadBinding(Class aClass) {
+		ClassLoader loader = aClass.getClassLoader();
+		if (loader == null) {
+			// system classes don't have bindings
+			return NO_BINDING;
+		}
+		String name = getBindingClassName(aClass.getName());
+		try {
+			Class bindingClass = Class.forName(name, true, loader);
+			logger.debug("Using generated binding " + name);
+			return bindingClass.newInstance();
+		} catch (ClassNotFoundException ex) {
+			return NO_BINDING;
+		} catch (Exception ex) {
+			logger.warn("Binding " + name + " could not be created, using reflection. ", ex);
+			return NO_BINDING;
+		} catch (LinkageError err) {
+			logger.warn("Binding " + name + " could not be loaded, using reflection. ", err);
+			return NO_BINDING;
+		}
+	}
+	
+}
@@ -0,0 +1,26 @@
+/* Copyright (C) 2005 Ministry of Agriculture and Forestry of Finland */
+package fi.mmm.yhteinen.swing.core.binding;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a view (YIComponent) or a YController class, for which
+ * YBindingProcessor generates a binding class at compile time.
+ * The generated class replaces reflection when framework
+ * searches view components or invokes controller event methods.
+ * <p>
+ * The binding is used only for the exact annotated class, so
+ * subclasses must be annotated too. Private nested classes are not supported.
+ * 
+ * @author Tomi Tuomainen
+ * @see YBindingProcessor
+ * @see YBindings
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface YGenerateBinding {
+
+}
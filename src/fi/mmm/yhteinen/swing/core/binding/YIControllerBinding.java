@@ -0,0 +1,34 @@
+/* Copyright (C) 2005 Ministry of Agriculture and Forestry of Finland */
+package fi.mmm.yhteinen.swing.core.binding;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Generated binding for a controller class. The binding 
+ * invokes public methods without parameters (for example
+ * <code>buttonSaveClicked()</code> or <code>customerNameChanged()</code>)
+ * directly instead of reflection.
+ * 
+ * @author Tomi Tuomainen
+ * @see YGenerateBinding
+ */
+public interface YIControllerBinding {
+
+	/**
+	 * @param methodName	the name of the method
+	 * @return				true if this binding can invoke method with given name
+	 */
+	public boolean hasMethod(String methodName);
+	
+	/**
+	 * Invokes a method without parameters.
+	 * 
+	 * @param controller	the controller, instance of the annotated class
+	 * @param methodName	the name of the method
+	 * @return				the return value of the method, null for void methods
+	 * @throws InvocationTargetException	if the method throws an exception 
+	 * 										(like Method.invoke)
+	 */
+	public Object invoke(Object controller, String methodName) throws InvocationTargetException;
+	
+}
@@ -0,0 +1,26 @@
+/* Copyright (C) 2005 Ministry of Agriculture and Forestry of Finland */
+package fi.mmm.yhteinen.swing.core.binding;
+
+import java.util.List;
+
+import fi.mmm.yhteinen.swing.core.YIComponent;
+
+/**
+ * Generated binding for a view class. 
+ * 
+ * @author Tomi Tuomainen
+ * @see YGenerateBinding
+ */
+public interface YIViewBinding {
+
+	/**
+	 * Returns components of a view. The components are the 
+	 * non-null results of public get-methods that return YIComponent
+	 * (the same components YUIToolkit would find via reflection).
+	 * 
+	 * @param view	the view, instance of the annotated class
+	 * @return		the components of the view
+	 */
+	public List getComponents(YIComponent view);
+	
+}
@@ -18,13 +18,16 @@ import javax.swing.event.ListSelectionListener;
 import org.apache.commons.lang.builder.EqualsBuilder;
 
 import fi.mmm.yhteinen.swing.core.YController;
+import fi.mmm.yhteinen.swing.core.YIBaselineModelComponent;
 import fi.mmm.yhteinen.swing.core.YIComponent;
+import fi.mmm.yhteinen.swing.core.YIModelBaseline;
 import fi.mmm.yhteinen.swing.core.YISharedModelComponent;
 import fi.mmm.yhteinen.swing.core.component.YButton;
 import fi.mmm.yhteinen.swing.core.component.YPanel;
 import fi.mmm.yhteinen.swing.core.component.YScrollPane;
 import fi.mmm.yhteinen.swing.core.error.YEqualsModelException;
 import fi.mmm.yhteinen.swing.core.error.YException;
+import fi.mmm.yhteinen.swing.core.tools.YCollectionBaseline;
 import fi.mmm.yhteinen.swing.core.tools.YFormatter;
 
 /**
@@ -44,7 +47,7 @@ import fi.mmm.yhteinen.swing.core.tools.YFormatter;
  *
  * @author Tomi Tuomainen
  */
-public class YDualList extends YPanel implements YISharedModelComponent{
+public class YDualList extends YPanel implements YIBaselineModelComponent{
 
 	private YPlainList sourceList = new YPlainList();
 	private YPlainList targetList = new YPlainList();
@@ -367,8 +370,32 @@ public class YDualList extends YPanel implements YISharedModelComponent{
      * @see YISharedModelComponent#equalsModel(java.lang.Object)
      */
     public boolean equalsModel(Object model) {
+    	if (model instanceof YCollectionBaseline) {
+    		return ((YCollectionBaseline) model).equalsCollection(
+    				(Collection) targetList.getModelValue());
+    	}
     	return this.targetList.equalsModel(model);
     }
+    
+    /**
+     * Creates baseline of selected values in target list. The baseline
+     * stores only references (and hash codes) of selected objects, since 
+     * the dual list does not change the objects. Returns null (so that cloneModel is used)
+     * if cloneModel or equalsModel is overridden.
+     * 
+     * @see YIBaselineModelComponent#createBaseline()
+     */
+    public YIModelBaseline createBaseline() {
+    	try {
+    		if (getClass().getMethod("cloneModel", (Class[]) null).getDeclaringClass() != YDualList.class ||
+    				getClass().getMethod("equalsModel", new Class[] {Object.class}).getDeclaringClass() != YDualList.class) {
+    			return null;
+    		}
+    	} catch (NoSuchMethodException ex) {
+    		return null;
+    	}
+    	return new YCollectionBaseline((Collection) targetList.getModelValue());
+    }
 	
     /**
      * @return the remove button
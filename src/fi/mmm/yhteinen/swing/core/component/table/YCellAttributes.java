@@ -0,0 +1,205 @@
+/* Copyright (C) 2005 Ministry of Agriculture and Forestry of Finland */
+package fi.mmm.yhteinen.swing.core.component.table;
+
+/**
+ * Storage for YTable cell attributes (editors, renderers, colors and
+ * editable states). An attribute may be set for a cell, a whole column
+ * (row -1), a whole row (column -1) or the whole table (row -1 and column -1).
+ * <p>
+ * Cell and row attributes are stored in an open addressing hash table
+ * with (row, column) packed into a long key, column and table attributes
+ * in arrays. Lookups don't allocate objects.
+ * <p>
+ * This class is for YTable internal use.
+ *
+ * @author Tomi Tuomainen
+ * @see YTable
+ */
+class YCellAttributes {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // cell and row attributes, values[i] is null in empty slots
+    private long[] keys;
+    private Object[] values;
+    private int size = 0;
+
+    // column attributes by column index
+    private Object[] columnValues = null;
+    // attribute for the whole table
+    private Object tableValue = null;
+
+    /**
+     * Sets an attribute. Null value removes the attribute.
+     *
+     * @param row       the row, -1 for the whole column
+     * @param column    the column, -1 for the whole row
+     * @param value     the attribute value
+     */
+    void put(int row, int column, Object value) {
+        if (row < 0 && column < 0) {
+            tableValue = value;
+        } else if (row < 0) {
+            if (columnValues == null || columnValues.length <= column) {
+                if (value == null) {
+                    return;
+                }
+                Object[] grown = new Object[Math.max(column + 1, 8)];
+                if (columnValues != null) {
+                    System.arraycopy(columnValues, 0, grown, 0, columnValues.length);
+                }
+                columnValues = grown;
+            }
+            columnValues[column] = value;
+        } else if (value == null) {
+            remove(key(row, column));
+        } else {
+            put(key(row, column), value);
+        }
+    }
+
+    /**
+     * Returns attribute of a cell. If the cell doesn't have an attribute,
+     * column attribute is returned, then row attribute and then
+     * table attribute.
+     *
+     * @param row       the row, -1 if only column and table attributes are searched
+     * @param column    the column
+     * @return          the attribute value or null
+     */
+    Object get(int row, int column) {
+        Object value = null;
+        if (size > 0 && row >= 0) {
+            value = get(key(row, column));
+        }
+        if (value == null && columnValues != null && column >= 0 && column < columnValues.length) {
+            value = columnValues[column];
+        }
+        if (value == null && size > 0 && row >= 0) {
+            value = get(key(row, -1));
+        }
+        if (value == null) {
+            value = tableValue;
+        }
+        return value;
+    }
+
+    /**
+     * Removes cell and row attributes of a row.
+     *
+     * @param row   the row
+     */
+    void removeRow(int row) {
+        if (size == 0) {
+            return;
+        }
+        long[] found = new long[size];
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null && (int) (keys[i] >> 32) == row) {
+                found[count++] = keys[i];
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            remove(found[i]);
+        }
+    }
+
+    /**
+     * Removes cell and row attributes.
+     */
+    void clearRows() {
+        keys = null;
+        values = null;
+        size = 0;
+    }
+
+    /**
+     * Removes all the attributes.
+     */
+    void clear() {
+        clearRows();
+        columnValues = null;
+        tableValue = null;
+    }
+
+    private static long key(int row, int column) {
+        return ((long) row << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private Object get(long key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    private void put(long key, Object value) {
+        if (keys == null) {
+            keys = new long[INITIAL_CAPACITY];
+            values = new Object[INITIAL_CAPACITY];
+        } else if ((size + 1) * 4 > keys.length * 3) {
+            rehash(keys.length * 2);
+        }
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        size++;
+    }
+
+    private void remove(long key) {
+        if (size == 0) {
+            return;
+        }
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (values[i] != null && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (values[i] == null) {
+            return;
+        }
+        values[i] = null;
+        size--;
+        // moving the following entries of the probe sequence back
+        for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+            int home = slot(keys[j], mask);
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                values[j] = null;
+                i = j;
+            }
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+}
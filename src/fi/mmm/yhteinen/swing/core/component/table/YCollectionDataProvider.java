@@ -0,0 +1,90 @@
+/* Copyright (C) 2005 Ministry of Agriculture and Forestry of Finland */
+package fi.mmm.yhteinen.swing.core.component.table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import fi.mmm.yhteinen.swing.core.tools.YCoreToolkit;
+import fi.mmm.yhteinen.swing.core.tools.YPropertyAccessor;
+
+/**
+ * YIDataProvider for rows in memory. This may be used as a local
+ * stand-in for a server-side data provider, for example in tests. Rows
+ * are sorted by property values using Comparable values (nulls first),
+ * the sorted order is kept until another sort order is requested.
+ *
+ * @author Tomi Tuomainen
+ * @see YTable#setDataProvider(YIDataProvider)
+ */
+public class YCollectionDataProvider implements YIDataProvider {
+
+    private List rows;
+    private List sortedRows;
+    private String[] sortProperties = new String[0];
+    private boolean[] descending = new boolean[0];
+
+    /**
+     * @param rows  the row objects
+     */
+    public YCollectionDataProvider(Collection rows) {
+        this.rows = new ArrayList(rows);
+        this.sortedRows = this.rows;
+    }
+
+    /*
+     *  (non-Javadoc)
+     * @see fi.mmm.yhteinen.swing.core.component.table.YIDataProvider#getRowCount()
+     */
+    public synchronized int getRowCount() {
+        return rows.size();
+    }
+
+    /*
+     *  (non-Javadoc)
+     * @see fi.mmm.yhteinen.swing.core.component.table.YIDataProvider#getRows(int, int, java.lang.String[], boolean[])
+     */
+    public synchronized List getRows(int firstRow, int rowCount, String[] sortProperties,
+            boolean[] descending) {
+        if (!Arrays.equals(this.sortProperties, sortProperties) ||
+                !Arrays.equals(this.descending, descending)) {
+            this.sortProperties = sortProperties;
+            this.descending = descending;
+            sortedRows = sort(sortProperties, descending);
+        }
+        int last = Math.min(firstRow + rowCount, sortedRows.size());
+        return new ArrayList(sortedRows.subList(Math.min(firstRow, last), last));
+    }
+
+    private List sort(String[] sortProperties, boolean[] descending) {
+        if (sortProperties.length == 0) {
+            return rows;
+        }
+        final YPropertyAccessor[] accessors = new YPropertyAccessor[sortProperties.length];
+        for (int i=0; i < accessors.length; i++) {
+            if (sortProperties[i] != null) {
+                accessors[i] = YPropertyAccessor.getAccessor(sortProperties[i]);
+            }
+        }
+        final boolean[] desc = descending;
+        List sorted = new ArrayList(rows);
+        Collections.sort(sorted, new Comparator() {
+            public int compare(Object row1, Object row2) {
+                for (int i=0; i < accessors.length; i++) {
+                    Object value1 = (accessors[i] == null) ? row1 : YCoreToolkit.getBeanValue(row1, accessors[i]);
+                    Object value2 = (accessors[i] == null) ? row2 : YCoreToolkit.getBeanValue(row2, accessors[i]);
+                    int comparison = YCoreToolkit.COMPARABLE_COMPARATOR.compare(value1, value2);
+                    if (comparison != 0) {
+                        return desc[i] ? -comparison : comparison;
+                    }
+                }
+                return 0;
+            }
+        });
+        return sorted;
+    }
+
+}
@@ -5,6 +5,7 @@ import java.util.Comparator;
 
 import fi.mmm.yhteinen.swing.core.YComponent;
 import fi.mmm.yhteinen.swing.core.YIComponent;
+import fi.mmm.yhteinen.swing.core.tools.YPropertyAccessor;
 
 /**
  * The column meta data for the table. Defines column external attributes
@@ -22,6 +23,8 @@ public class YColumn extends YComponent {
     private YTableFormatter formatter = null;
     private Comparator comparator = null;
     private Class editorClass = null;
+    // accessor of MVC_NAME (replaced if MVC_NAME changes)
+    private volatile YPropertyAccessor accessor = null;
     
     /**
      * @param mvcName the name of the field on table model POJO
@@ -200,4 +203,23 @@ public class YColumn extends YComponent {
 	public void setEditorClass(Class editorClass) {
 		this.editorClass = editorClass;
 	}
+
+	/**
+	 * Returns compiled accessor of the column MVC_NAME. The accessor
+	 * is replaced if MVC_NAME has been changed.
+	 * 
+	 * @return the accessor or null if MVC_NAME is not set
+	 */
+	public YPropertyAccessor getPropertyAccessor() {
+		String mvcName = (String) getYProperty().get(YIComponent.MVC_NAME);
+		if (mvcName == null) {
+			return null;
+		}
+		YPropertyAccessor current = accessor;
+		if (current == null || !current.getPath().equals(mvcName)) {
+			current = YPropertyAccessor.getAccessor(mvcName);
+			accessor = current;
+		}
+		return current;
+	}
 }
@@ -0,0 +1,24 @@
+/* Copyright (C) 2005 Ministry of Agriculture and Forestry of Finland */
+package fi.mmm.yhteinen.swing.core.component.table;
+
+/**
+ * A predicate for filtering YTable rows by column value. Several
+ * filters may be added to the same column and to different columns,
+ * a row is shown only if all the filters accept it.
+ * <p>
+ * The filter should depend on the value only, since YTableFilter
+ * tests each distinct value of a column just once.
+ *
+ * @author Tomi Tuomainen
+ * @see YTable#addColumnFilter(int, YIColumnFilter)
+ * @see YTableFilter
+ */
+public interface YIColumnFilter {
+
+	/**
+	 * @param value	the column value of a row (model value, not formatted)
+	 * @return		true if the row may be shown
+	 */
+	public boolean accept(Object value);
+
+}
@@ -0,0 +1,36 @@
+/* Copyright (C) 2005 Ministry of Agriculture and Forestry of Finland */
+package fi.mmm.yhteinen.swing.core.component.table;
+
+import java.util.List;
+
+/**
+ * Source of YTable rows, which are fetched in pages when they are
+ * shown (for example from a server-side result set). Pages are
+ * fetched in a background thread, so implementations must be
+ * thread safe.
+ *
+ * @author Tomi Tuomainen
+ * @see YTable#setDataProvider(YIDataProvider)
+ */
+public interface YIDataProvider {
+
+    /**
+     * @return the total number of rows
+     */
+    public int getRowCount();
+
+    /**
+     * Fetches rows in given sort order. Sort properties are MVC_NAMEs
+     * of the sorted columns (null for a column that shows the whole row).
+     *
+     * @param firstRow          the index of the first row
+     * @param rowCount          the maximum number of rows
+     * @param sortProperties    the sort properties, primary property first
+     *                          (empty if rows are not sorted)
+     * @param descending        true for each property sorted in descending order
+     * @return                  the row objects
+     */
+    public List getRows(int firstRow, int rowCount, String[] sortProperties,
+            boolean[] descending);
+
+}
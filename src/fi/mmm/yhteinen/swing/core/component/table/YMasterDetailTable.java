@@ -13,6 +13,7 @@ import fi.mmm.yhteinen.swing.core.component.YPanel;
 import fi.mmm.yhteinen.swing.core.component.YScrollPane;
 import fi.mmm.yhteinen.swing.core.error.YException;
 import fi.mmm.yhteinen.swing.core.tools.YCoreToolkit;
+import fi.mmm.yhteinen.swing.core.tools.YPropertyAccessor;
 import fi.mmm.yhteinen.swing.core.tools.YUIToolkit;
 
 /**
@@ -173,8 +174,10 @@ public class YMasterDetailTable extends YPanel implements YIModelComponent {
                                 // setting mvc name
                                 String mvcName = (String) table.getYProperty().get(YIComponent.MVC_NAME);
                                 int index = table.getSelectedRow();
-                                String nextMvcName = mvcName+"[" + index+ "]." + collectionName;
-                                nextTable.getYProperty().put(YIComponent.MVC_NAME, nextMvcName);
+                                // derived accessors are cached, no string building or parsing:
+                                YPropertyAccessor next = YPropertyAccessor.getAccessor(mvcName).
+                                    getElement(index).getChild(collectionName);
+                                nextTable.getYProperty().put(YIComponent.MVC_NAME, next.getPath());
                                 // setting collection    
                                 Collection children = (Collection) method.invoke(obj, YCoreToolkit.EMPTY_PARAM);
                                 nextTable.setModelValue(children);
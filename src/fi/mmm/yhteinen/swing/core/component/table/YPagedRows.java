@@ -0,0 +1,239 @@
+/* Copyright (C) 2005 Ministry of Agriculture and Forestry of Finland */
+package fi.mmm.yhteinen.swing.core.component.table;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import fi.mmm.yhteinen.swing.core.worker.SwingWorker;
+
+/**
+ * Rows of YTable in data provider mode. Rows are fetched from
+ * YIDataProvider in pages, when they are requested. Not loaded rows
+ * are returned as null and the page is fetched in a background thread.
+ * Only the latest used pages are kept in memory.
+ * <p>
+ * Pages are fetched one at a time, the latest requested page first,
+ * so the visible rows are loaded first while the table is scrolled.
+ * If fetching fails, no more pages are fetched until refresh.
+ * <p>
+ * This class is for YTable internal use.
+ *
+ * @author Tomi Tuomainen
+ * @see YIDataProvider
+ */
+class YPagedRows extends AbstractList {
+
+    private YTable table;
+    private YIDataProvider provider;
+    private int pageSize;
+    private int maxPages;
+
+    private int rowCount;
+    private String[] sortProperties = new String[0];
+    private boolean[] descending = new boolean[0];
+
+    // page number (Integer) -> List of rows, in access order
+    private LinkedHashMap pages;
+    // page numbers (Integer) waiting to be loaded, the latest last
+    private LinkedList requested = new LinkedList();
+    // requested pages and the page being loaded
+    private Set loading = new HashSet();
+    private PageLoader loader;
+    // changes when loaded pages become invalid
+    private int generation = 0;
+    // true if fetching a page has failed (pages are not fetched until refresh)
+    private boolean failed = false;
+
+    /**
+     * @param table     the table
+     * @param provider  the data provider
+     * @param pageSize  the number of rows in a page
+     * @param maxPages  the maximum number of pages in memory
+     */
+    YPagedRows(YTable table, YIDataProvider provider, int pageSize, final int maxPages) {
+        this.table = table;
+        this.provider = provider;
+        this.pageSize = pageSize;
+        this.maxPages = maxPages;
+        this.pages = new LinkedHashMap(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                if (size() > maxPages) {
+                    YPagedRows.this.table.rowsDiscarded((List) eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.rowCount = provider.getRowCount();
+    }
+
+    /**
+     * @return the data provider
+     */
+    YIDataProvider getProvider() {
+        return provider;
+    }
+
+    /**
+     * Sets the sort order. Loaded pages are discarded.
+     *
+     * @param sortProperties    the sort properties
+     * @param descending        true for each property sorted in descending order
+     */
+    void setSort(String[] sortProperties, boolean[] descending) {
+        this.sortProperties = sortProperties;
+        this.descending = descending;
+        clear();
+    }
+
+    /**
+     * Discards loaded pages and reads the row count again.
+     */
+    void refresh() {
+        failed = false;
+        rowCount = provider.getRowCount();
+        clear();
+    }
+
+    /*
+     *  (non-Javadoc)
+     * @see java.util.List#clear()
+     */
+    public void clear() {
+        generation++;
+        Iterator it = pages.values().iterator();
+        while (it.hasNext()) {
+            table.rowsDiscarded((List) it.next());
+        }
+        pages.clear();
+        requested.clear();
+        loading.clear();
+    }
+
+    /**
+     * @param row   the row index
+     * @return      true if the page of the row has been loaded
+     */
+    boolean isLoaded(int row) {
+        return pages.containsKey(new Integer(row / pageSize));
+    }
+
+    /**
+     * @return  the rows of loaded pages (not changing page access order)
+     */
+    Iterator loadedRows() {
+        List rows = new ArrayList();
+        Iterator it = pages.values().iterator();
+        while (it.hasNext()) {
+            rows.addAll((List) it.next());
+        }
+        return rows.iterator();
+    }
+
+    /*
+     *  (non-Javadoc)
+     * @see java.util.List#get(int)
+     */
+    public Object get(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row: " + row + ", row count: " + rowCount);
+        }
+        Integer page = new Integer(row / pageSize);
+        List rows = (List) pages.get(page);
+        if (rows == null) {
+            request(page);
+            return null;
+        }
+        int index = row % pageSize;
+        return (index < rows.size()) ? rows.get(index) : null;
+    }
+
+    /*
+     *  (non-Javadoc)
+     * @see java.util.Collection#size()
+     */
+    public int size() {
+        return rowCount;
+    }
+
+    private void request(Integer page) {
+        if (failed || loading.contains(page)) {
+            return;
+        }
+        loading.add(page);
+        requested.addLast(page);
+        if (requested.size() > maxPages) {
+            // the oldest request is not visible any more
+            loading.remove(requested.removeFirst());
+        }
+        if (loader == null) {
+            loadNext();
+        }
+    }
+
+    private void loadNext() {
+        if (!requested.isEmpty()) {
+            Integer page = (Integer) requested.removeLast();
+            loader = new PageLoader(page.intValue());
+            loader.start();
+        }
+    }
+
+    /**
+     * Fetches a page from the data provider.
+     */
+    private class PageLoader extends SwingWorker {
+        private int page;
+        private int loaderGeneration;
+        private String[] loaderSortProperties;
+        private boolean[] loaderDescending;
+        private RuntimeException error;
+
+        PageLoader(int page) {
+            this.page = page;
+            this.loaderGeneration = generation;
+            this.loaderSortProperties = sortProperties;
+            this.loaderDescending = descending;
+        }
+
+        public Object construct() {
+            try {
+                int first = page * pageSize;
+                return provider.getRows(first, Math.min(pageSize, rowCount - first),
+                        loaderSortProperties, loaderDescending);
+            } catch (RuntimeException ex) {
+                error = ex;
+                return null;
+            }
+        }
+
+        public void finished() {
+            loader = null;
+            Integer key = new Integer(page);
+            if (loaderGeneration == generation) {
+                loading.remove(key);
+                if (error != null) {
+                    // not requesting pages again on every repaint
+                    failed = true;
+                    requested.clear();
+                    loading.clear();
+                    table.rowsLoadFailed(error);
+                    return;
+                }
+                List rows = (List) get();
+                pages.put(key, (rows == null) ? new ArrayList(0) : rows);
+                int first = page * pageSize;
+                table.rowsLoaded(first, Math.min(first + pageSize, rowCount) - 1);
+            }
+            loadNext();
+        }
+    }
+
+}
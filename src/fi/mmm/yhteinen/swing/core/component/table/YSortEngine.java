@@ -0,0 +1,332 @@
+/* Copyright (C) 2005 Ministry of Agriculture and Forestry of Finland */
+package fi.mmm.yhteinen.swing.core.component.table;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import fi.mmm.yhteinen.swing.core.tools.YCoreToolkit;
+
+/**
+ * Sorting engine for YTableSorter. Sort keys are extracted once per
+ * row (strings compared with LEXICAL_COMPARATOR are turned into
+ * CollationKeys, numbers and dates into primitive arrays), and a row
+ * index permutation is sorted with a stable merge sort. Large tables
+ * are sorted in several threads, if all the keys are extracted 
+ * (comparators of ObjectKeys may not be thread safe). A sort may be cancelled.
+ * <p>
+ * This class is for YTableSorter internal use.
+ *
+ * @author Tomi Tuomainen
+ * @see YTableSorter
+ */
+class YSortEngine {
+
+    // ranges smaller than this are sorted with insertion sort
+    private static final int INSERTION_SORT_SIZE = 7;
+
+    /**
+     * Creates sort key for column values. Nulls are
+     * less than any other value.
+     *
+     * @param values        the column values of each row (model order)
+     * @param comparator    the comparator of the column
+     * @return              the key
+     */
+    static Key createKey(Object[] values, Comparator comparator) {
+        if (comparator == YCoreToolkit.LEXICAL_COMPARATOR) {
+            return new CollationKeys(values);
+        } else if (comparator == YCoreToolkit.COMPARABLE_COMPARATOR) {
+            Class valueClass = getValueClass(values);
+            if (valueClass == Integer.class || valueClass == Long.class ||
+                    valueClass == Short.class || valueClass == Byte.class ||
+                    valueClass == Date.class) {
+                return new LongKeys(values);
+            } else if (valueClass == Double.class || valueClass == Float.class) {
+                return new DoubleKeys(values);
+            }
+        }
+        return new ObjectKeys(values, comparator);
+    }
+
+    /**
+     * @return the class of all not-null values, null if classes differ
+     */
+    private static Class getValueClass(Object[] values) {
+        Class valueClass = null;
+        for (int i=0; i < values.length; i++) {
+            if (values[i] != null) {
+                if (valueClass == null) {
+                    valueClass = values[i].getClass();
+                } else if (valueClass != values[i].getClass()) {
+                    return null;
+                }
+            }
+        }
+        return valueClass;
+    }
+
+    /**
+     * Sorts row indexes by the keys.
+     *
+     * @param keys              the keys (primary key first)
+     * @param descending        true for each key that is sorted in descending order
+     * @param rowCount          the number of rows
+     * @param parallelThreshold the number of rows, after which several threads are used
+     * @return                  the sorted model indexes
+     */
+    static int[] sort(Key[] keys, boolean[] descending, int rowCount, int parallelThreshold) {
+        return sort(keys, descending, rowCount, parallelThreshold, null);
+    }
+
+    /**
+     * Sorts row indexes by the keys. The sort stops with
+     * CancellationException when the cancelled flag is set.
+     *
+     * @param keys              the keys (primary key first)
+     * @param descending        true for each key that is sorted in descending order
+     * @param rowCount          the number of rows
+     * @param parallelThreshold the number of rows, after which several threads are used
+     * @param cancelled         the cancel flag, may be null
+     * @return                  the sorted model indexes
+     */
+    static int[] sort(Key[] keys, boolean[] descending, int rowCount, int parallelThreshold,
+            AtomicBoolean cancelled) {
+        int[] rows = new int[rowCount];
+        for (int i=0; i < rowCount; i++) {
+            rows[i] = i;
+        }
+        RowComparator comparator = new RowComparator(keys, descending, cancelled);
+        int[] buffer = rows.clone();
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        if (rowCount >= parallelThreshold && parallelism > 1 && isThreadSafe(keys)) {
+            int granularity = Math.max(rowCount / (parallelism * 4), INSERTION_SORT_SIZE);
+            YCoreToolkit.getParallelPool().invoke(new SortTask(buffer, rows, 0, rowCount, comparator, granularity));
+        } else {
+            mergeSort(buffer, rows, 0, rowCount, comparator);
+        }
+        return rows;
+    }
+
+    /**
+     * @return true if keys may be compared in several threads
+     */
+    private static boolean isThreadSafe(Key[] keys) {
+        for (int i=0; i < keys.length; i++) {
+            if (keys[i] instanceof ObjectKeys) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stable merge sort: sorts src[from, to) into dest. Both arrays
+     * must hold the same values in the range.
+     */
+    private static void mergeSort(int[] src, int[] dest, int from, int to, RowComparator c) {
+        if (to - from < INSERTION_SORT_SIZE) {
+            for (int i=from; i < to; i++) {
+                for (int j=i; j > from && c.compare(dest[j-1], dest[j]) > 0; j--) {
+                    int swap = dest[j];
+                    dest[j] = dest[j-1];
+                    dest[j-1] = swap;
+                }
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(dest, src, from, mid, c);
+        mergeSort(dest, src, mid, to, c);
+        merge(src, dest, from, mid, to, c);
+    }
+
+    /**
+     * Merges sorted src[from, mid) and src[mid, to) into dest.
+     */
+    private static void merge(int[] src, int[] dest, int from, int mid, int to, RowComparator c) {
+        if (c.cancelled != null && c.cancelled.get()) {
+            throw new CancellationException();
+        }
+        if (c.compare(src[mid-1], src[mid]) <= 0) {
+            System.arraycopy(src, from, dest, from, to - from);
+            return;
+        }
+        for (int i=from, p=from, q=mid; i < to; i++) {
+            if (q >= to || (p < mid && c.compare(src[p], src[q]) <= 0)) {
+                dest[i] = src[p++];
+            } else {
+                dest[i] = src[q++];
+            }
+        }
+    }
+
+    /**
+     * Merge sort, which sorts the halves in parallel.
+     */
+    private static class SortTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private int[] src;
+        private int[] dest;
+        private int from;
+        private int to;
+        private RowComparator comparator;
+        private int granularity;
+
+        SortTask(int[] src, int[] dest, int from, int to, RowComparator comparator, int granularity) {
+            this.src = src;
+            this.dest = dest;
+            this.from = from;
+            this.to = to;
+            this.comparator = comparator;
+            this.granularity = granularity;
+        }
+
+        protected void compute() {
+            if (to - from <= granularity) {
+                mergeSort(src, dest, from, to, comparator);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new SortTask(dest, src, from, mid, comparator, granularity),
+                          new SortTask(dest, src, mid, to, comparator, granularity));
+                merge(src, dest, from, mid, to, comparator);
+            }
+        }
+    }
+
+    /**
+     * Compares rows by all the keys.
+     */
+    private static class RowComparator {
+        private Key[] keys;
+        private boolean[] descending;
+        private AtomicBoolean cancelled;
+
+        RowComparator(Key[] keys, boolean[] descending, AtomicBoolean cancelled) {
+            this.keys = keys;
+            this.descending = descending;
+            this.cancelled = cancelled;
+        }
+
+        int compare(int row1, int row2) {
+            for (int i=0; i < keys.length; i++) {
+                int comparison = keys[i].compare(row1, row2);
+                if (comparison != 0) {
+                    return descending[i] ? -comparison : comparison;
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Sort keys of one column.
+     */
+    abstract static class Key {
+        private boolean[] nulls;
+
+        Key(Object[] values) {
+            nulls = new boolean[values.length];
+            for (int i=0; i < values.length; i++) {
+                nulls[i] = (values[i] == null);
+            }
+        }
+
+        int compare(int row1, int row2) {
+            // null is less than everything, except null
+            if (nulls[row1]) {
+                return nulls[row2] ? 0 : -1;
+            } else if (nulls[row2]) {
+                return 1;
+            }
+            return compareValues(row1, row2);
+        }
+
+        /**
+         * Compares not-null values of the rows.
+         */
+        abstract int compareValues(int row1, int row2);
+    }
+
+    private static class LongKeys extends Key {
+        private long[] keys;
+
+        LongKeys(Object[] values) {
+            super(values);
+            keys = new long[values.length];
+            for (int i=0; i < values.length; i++) {
+                if (values[i] instanceof Date) {
+                    keys[i] = ((Date) values[i]).getTime();
+                } else if (values[i] != null) {
+                    keys[i] = ((Number) values[i]).longValue();
+                }
+            }
+        }
+
+        int compareValues(int row1, int row2) {
+            long k1 = keys[row1];
+            long k2 = keys[row2];
+            return k1 < k2 ? -1 : (k1 == k2 ? 0 : 1);
+        }
+    }
+
+    private static class DoubleKeys extends Key {
+        private double[] keys;
+
+        DoubleKeys(Object[] values) {
+            super(values);
+            keys = new double[values.length];
+            for (int i=0; i < values.length; i++) {
+                if (values[i] != null) {
+                    keys[i] = ((Number) values[i]).doubleValue();
+                }
+            }
+        }
+
+        int compareValues(int row1, int row2) {
+            // the same order as Double.compareTo
+            return Double.compare(keys[row1], keys[row2]);
+        }
+    }
+
+    private static class CollationKeys extends Key {
+        private CollationKey[] keys;
+
+        CollationKeys(Object[] values) {
+            super(values);
+            // the same rules as LEXICAL_COMPARATOR:
+            Collator collator = YCoreToolkit.getCollator();
+            keys = new CollationKey[values.length];
+            for (int i=0; i < values.length; i++) {
+                if (values[i] != null) {
+                    String s = values[i].toString();
+                    keys[i] = collator.getCollationKey(s == null ? "" : s);
+                }
+            }
+        }
+
+        int compareValues(int row1, int row2) {
+            return keys[row1].compareTo(keys[row2]);
+        }
+    }
+
+    private static class ObjectKeys extends Key {
+        private Object[] keys;
+        private Comparator comparator;
+
+        ObjectKeys(Object[] values, Comparator comparator) {
+            super(values);
+            this.keys = values;
+            this.comparator = comparator;
+        }
+
+        int compareValues(int row1, int row2) {
+            return comparator.compare(keys[row1], keys[row2]);
+        }
+    }
+
+}
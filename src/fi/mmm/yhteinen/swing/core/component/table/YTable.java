@@ -16,11 +16,14 @@ import java.awt.event.MouseEvent;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import javax.swing.AbstractAction;
 import javax.swing.DefaultCellEditor;
@@ -30,14 +33,18 @@ import javax.swing.JTable;
 import javax.swing.JTextField;
 import javax.swing.KeyStroke;
 
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
+import javax.swing.event.TableModelEvent;
 
 import javax.swing.table.AbstractTableModel;
 import javax.swing.table.DefaultTableColumnModel;
 import javax.swing.table.TableCellEditor;
 import javax.swing.table.TableCellRenderer;
 import javax.swing.table.TableColumn;
+import javax.swing.text.JTextComponent;
 
 import javax.swing.ListSelectionModel;
 
@@ -47,7 +54,9 @@ import org.apache.commons.lang.SerializationUtils;
 import org.apache.log4j.Logger;
 
 import fi.mmm.yhteinen.swing.core.YController;
+import fi.mmm.yhteinen.swing.core.YIBaselineModelComponent;
 import fi.mmm.yhteinen.swing.core.YIComponent;
+import fi.mmm.yhteinen.swing.core.YIModelBaseline;
 import fi.mmm.yhteinen.swing.core.YISharedModelComponent;
 import fi.mmm.yhteinen.swing.core.YIValidatorComponent;
 
@@ -58,8 +67,10 @@ import fi.mmm.yhteinen.swing.core.error.YModelGetValueException;
 import fi.mmm.yhteinen.swing.core.error.YModelSetValueException;
 
 import fi.mmm.yhteinen.swing.core.savechanges.YSaveChangesHandler;
+import fi.mmm.yhteinen.swing.core.tools.YCollectionBaseline;
 import fi.mmm.yhteinen.swing.core.tools.YCoreToolkit;
 import fi.mmm.yhteinen.swing.core.tools.YProperty;
+import fi.mmm.yhteinen.swing.core.tools.YPropertyAccessor;
 import fi.mmm.yhteinen.swing.core.tools.YUIToolkit;
 
 /**
@@ -105,11 +116,15 @@ import fi.mmm.yhteinen.swing.core.tools.YUIToolkit;
  * you probably should override methods equalsModel and cloneModel 
  * to get them work with your table Collection.
  * <p>
+ * For large tables, change tracking may use a copy-on-write baseline 
+ * instead of cloning the table Collection (see setCopyOnWriteBaseline): 
+ * a row object is copied only when the table changes it the first time.
+ * <p>
  *  
  * @see YColumn
  * @author Tomi Tuomainen
  */
-public class YTable extends JTable implements YISharedModelComponent, 
+public class YTable extends JTable implements YIBaselineModelComponent, 
     YIValidatorComponent {
     
     private boolean cellTooltips = false;
@@ -122,10 +137,16 @@ public class YTable extends JTable implements YISharedModelComponent,
     
     private YController controller;    
     
+    // marker for values not in the row value cache
+    private static final Object NOT_CACHED = new Object();
+    
     private YTableModel tableModel = new YTableModel();
-    private YTableSorter sorter = new YTableSorter(this, tableModel);
+    private YTableFilter filter = new YTableFilter(this, tableModel);
+    private YTableSorter sorter = new YTableSorter(this, filter);
     
     private YColumn[] columns;
+    // counts MVC_NAME changes of the columns:
+    private YProperty.MvcNameCounter mvcNameCounter = new YProperty.MvcNameCounter();
     
     /** Sorting is not possible in this table */
     public static final int SORTING_DISABLED = 0;
@@ -141,22 +162,51 @@ public class YTable extends JTable implements YISharedModelComponent,
     public static final int SORTING_COMPARABLE = 2;
         
     private boolean ignoreSelection = false;
+    // controller notifications of selection changes:
+    private ListSelectionListener selectionListener = null;
     private boolean editable = true; 
     
     // table data in view model class:
     private Collection modelCollection = null;
     
+    private boolean copyOnWriteBaseline = false;
+    private boolean rowValueCache = false;
+    // the latest baseline created for change tracking:
+    private YCollectionBaseline baseline = null;
+    
     // the "real" data of table model:s
-    private ArrayList data = EMPTY_MODEL;
+    private List data = EMPTY_MODEL;
+    
+    /** The default number of rows fetched at once from YIDataProvider. */
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    /** The default number of YIDataProvider pages kept in memory. */
+    public static final int DEFAULT_CACHED_PAGES = 50;
+    
+    // rows of data provider mode, null if table model is a collection:
+    private YPagedRows pagedRows = null;
+    private String loadingText = "...";
+    private YTableCellRenderer loadingRenderer = null;
     
-    private HashMap editors = new HashMap(); // editors specified for individual cells
-    private HashMap renderers = new HashMap(); // renderers specified for individual cells
-    private HashMap editableCells = new HashMap(); // editable states specified for individual cells
+    private YCellAttributes editors = new YCellAttributes(); // editors specified for individual cells
+    private YCellAttributes renderers = new YCellAttributes(); // renderers specified for individual cells
+    private YCellAttributes editableCells = new YCellAttributes(); // editable states specified for individual cells
 
-    private HashMap foregroundColors = new HashMap(); // cell colors specified for individual cells
-    private HashMap selectedForegroundColors = new HashMap(); // cell colors specified for individual cells
-    private HashMap backgroundColors = new HashMap(); // cell colors specified for individual cells
-    private HashMap selectedBackgroundColors = new HashMap(); // cell colors specified for individual cells
+    private YCellAttributes foregroundColors = new YCellAttributes(); // cell colors specified for individual cells
+    private YCellAttributes selectedForegroundColors = new YCellAttributes(); // cell colors specified for individual cells
+    private YCellAttributes backgroundColors = new YCellAttributes(); // cell colors specified for individual cells
+    private YCellAttributes selectedBackgroundColors = new YCellAttributes(); // cell colors specified for individual cells
+
+    /** Cell attributes are bound to view row indexes (the default). */
+    public static final int CELL_ROWS_BY_VIEW_INDEX = 0;
+    /** Cell attributes are bound to table model row indexes. */
+    public static final int CELL_ROWS_BY_MODEL_INDEX = 1;
+    /** Cell attributes are bound to row objects (the same instance). */
+    public static final int CELL_ROWS_BY_OBJECT = 2;
+
+    private int cellRowMode = CELL_ROWS_BY_VIEW_INDEX;
+    // row object -> Integer row key, in CELL_ROWS_BY_OBJECT mode
+    private IdentityHashMap rowObjectKeys = new IdentityHashMap();
+    private int nextRowObjectKey = 0;
 
     private boolean sortable = true;
     private Comparator sortingComparator = null;
@@ -243,6 +293,7 @@ public class YTable extends JTable implements YISharedModelComponent,
             if (this.getCellEditor() != null) {
                 this.getCellEditor().stopCellEditing();
             }
+            pagedRows = null;
             if (obj == null) {
                 data = EMPTY_MODEL;
             } else {
@@ -262,10 +313,135 @@ public class YTable extends JTable implements YISharedModelComponent,
                     }
                 }
             }
+            retainRowObjectKeys();
             tableModel.fireTableDataChanged();
        
     }
     
+    /**
+     * Sets data provider, which is used as table model instead of a collection. 
+     * Rows are fetched in pages in a background thread when they are shown, 
+     * and only the latest used pages are kept in memory. Sorting is done 
+     * by the data provider. The table is read-only: rows cannot be added, 
+     * removed, edited or filtered, and isRendered is not used. Not loaded rows are shown with the loading text. 
+     * Setting model value (setModelValue) ends data provider mode.
+     * 
+     * @param provider  the data provider, null clears the table
+     */
+    public void setDataProvider(YIDataProvider provider) {
+        setDataProvider(provider, DEFAULT_PAGE_SIZE, DEFAULT_CACHED_PAGES);
+    }
+    
+    /**
+     * Sets data provider, which is used as table model instead of a collection.
+     * 
+     * @param provider      the data provider, null clears the table
+     * @param pageSize      the number of rows fetched at once
+     * @param cachedPages   the maximum number of pages kept in memory
+     * @see #setDataProvider(YIDataProvider)
+     */
+    public void setDataProvider(YIDataProvider provider, int pageSize, int cachedPages) {
+        if (provider == null) {
+            setModelValue(null);
+            return;
+        }
+        if (this.getCellEditor() != null) {
+            this.getCellEditor().stopCellEditing();
+        }
+        filter.clearFilters();
+        modelCollection = null;
+        pagedRows = new YPagedRows(this, provider, pageSize, cachedPages);
+        data = pagedRows;
+        retainRowObjectKeys();
+        sorter.sortDataProvider();
+        tableModel.fireTableDataChanged();
+    }
+    
+    /**
+     * @return  the data provider, null if table model is a collection
+     */
+    public YIDataProvider getDataProvider() {
+        return (pagedRows == null) ? null : pagedRows.getProvider();
+    }
+    
+    /**
+     * Discards loaded rows and reads the row count from the 
+     * data provider again. Rows are fetched again also after
+     * a failed fetch.
+     */
+    public void refreshDataProvider() {
+        if (pagedRows != null) {
+            pagedRows.refresh();
+            tableModel.fireTableDataChanged();
+        }
+    }
+    
+    /**
+     * @return  the rows in data provider mode, otherwise null
+     */
+    YPagedRows getPagedRows() {
+        return pagedRows;
+    }
+    
+    /**
+     * Called by YPagedRows when a page has been loaded.
+     * 
+     * @param firstRow  the first loaded row
+     * @param lastRow   the last loaded row
+     */
+    void rowsLoaded(int firstRow, int lastRow) {
+        tableModel.clearUnknownColumnClasses();
+        tableModel.fireTableRowsUpdated(firstRow, lastRow);
+    }
+    
+    /**
+     * Called by YPagedRows when loaded rows are discarded from memory.
+     * 
+     * @param rows  the discarded row objects
+     */
+    void rowsDiscarded(List rows) {
+        if (!rowObjectKeys.isEmpty()) {
+            for (int i=0; i < rows.size(); i++) {
+                removeRowObjectKey(rows.get(i));
+            }
+        }
+    }
+    
+    /**
+     * Called by YPagedRows when fetching a page has failed. The exception
+     * is passed to controller's handleException. 
+     * 
+     * @param ex    the exception thrown by the data provider
+     */
+    void rowsLoadFailed(RuntimeException ex) {
+        if (controller == null) {
+            throw ex;
+        }
+        controller.handleException(ex);
+    }
+    
+    /**
+     * @param row   the row
+     * @return      false if the row has not been loaded from the data provider yet
+     */
+    public boolean isRowLoaded(int row) {
+        return pagedRows == null || pagedRows.isLoaded(filter.modelIndex(sorter.modelIndex(row)));
+    }
+    
+    /**
+     * @return the text shown in rows not loaded from the data provider
+     */
+    public String getLoadingText() {
+        return loadingText;
+    }
+    
+    /**
+     * @param loadingText the text shown in rows not loaded from the data provider
+     */
+    public void setLoadingText(String loadingText) {
+        this.loadingText = loadingText;
+    }
+    
     /**
      * This method should be overridden for specifying which row objects are showed in the table.
      * The default implementation returns true, so all objects in table model are visible.
@@ -284,7 +460,148 @@ public class YTable extends JTable implements YISharedModelComponent,
      * @return the row object
      */
     public Object getObject(int row) {
-        return data.get(sorter.modelIndex(row));
+        return data.get(filter.modelIndex(sorter.modelIndex(row)));
+    }
+    
+    /**
+     * Returns the current row objects for YTableSorter background sorting. 
+     * 
+     * @return  the row objects in table filter order
+     */
+    Object[] getRowSnapshot() {
+        if (!filter.isFiltering()) {
+            return data.toArray();
+        }
+        Object[] rows = new Object[filter.getRowCount()];
+        for (int i=0; i < rows.length; i++) {
+            rows[i] = data.get(filter.modelIndex(i));
+        }
+        return rows;
+    }
+    
+    /**
+     * Returns the current row objects for YTableFilter background filtering. 
+     * 
+     * @return  the row objects in table model order
+     */
+    Object[] getModelRowSnapshot() {
+        return data.toArray();
+    }
+    
+    /**
+     * @return the filter model between table model and the sorter
+     */
+    public YTableFilter getFilter() {
+        return filter;
+    }
+    
+    /**
+     * Adds a filter for a column. Only rows accepted by all the filters 
+     * are shown. The filter is tested against model values of the
+     * column (not formatted values). Adding a filter tests only the 
+     * currently visible rows.
+     * 
+     * @param column    the column index (in YColumn array)
+     * @param columnFilter    the filter
+     */
+    public void addColumnFilter(int column, YIColumnFilter columnFilter) {
+        checkNotDataProvider("filtered");
+        Object selected = startFiltering();
+        filter.addColumnFilter(column, columnFilter);
+        restoreSelection(selected);
+    }
+    
+    /**
+     * Removes a column filter.
+     * 
+     * @param column    the column index (in YColumn array)
+     * @param columnFilter    the filter to be removed
+     */
+    public void removeColumnFilter(int column, YIColumnFilter columnFilter) {
+        Object selected = startFiltering();
+        filter.removeColumnFilter(column, columnFilter);
+        restoreSelection(selected);
+    }
+    
+    /**
+     * Removes all column filters and the quick search text.
+     */
+    public void clearFilters() {
+        Object selected = startFiltering();
+        filter.clearFilters();
+        restoreSelection(selected);
+    }
+    
+    /**
+     * Sets quick search text. Only rows which contain the text 
+     * (case insensitive) in any column are shown. Formatted 
+     * values are searched for columns with YTableFormatter.
+     * 
+     * @param text  the search text, null or empty shows all rows
+     */
+    public void setQuickSearch(String text) {
+        checkNotDataProvider("filtered");
+        Object selected = startFiltering();
+        filter.setQuickSearch(text);
+        restoreSelection(selected);
+    }
+    
+    /**
+     * @return  the quick search text (lower case), null if not set
+     */
+    public String getQuickSearch() {
+        return filter.getQuickSearch();
+    }
+    
+    /**
+     * Uses text of given component as quick search text of this table.
+     * The table is filtered whenever the text changes.
+     * 
+     * @param searchField   the search field (e.g. YTextField)
+     */
+    public void installQuickSearch(final JTextComponent searchField) {
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) {
+                setQuickSearch(searchField.getText());
+            }
+            public void removeUpdate(DocumentEvent e) {
+                setQuickSearch(searchField.getText());
+            }
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+    }
+    
+    /**
+     * @param action    the denied action for the error message (e.g. "filtered")
+     */
+    private void checkNotDataProvider(String action) {
+        if (pagedRows != null) {
+            throw new YException("Rows cannot be " + action + " in data provider mode.");
+        }
+    }
+    
+    /**
+     * Ignores selection events while rows are filtered. 
+     * 
+     * @return  the selected object, to be passed to restoreSelection
+     */
+    Object startFiltering() {
+        Object selected = getSelectedObject();
+        ignoreSelection = true;
+        return selected;
+    }
+    
+    /**
+     * Selects the object again after filtering, if it is still shown. 
+     * The controller is notified only if the object was filtered out.
+     */
+    void restoreSelection(Object selected) {
+        boolean found = (selected == null) || setSelectedRow(selected);
+        ignoreSelection = false;
+        if (!found && selectionListener != null) {
+            selectionListener.valueChanged(new ListSelectionEvent(getSelectionModel(), -1, -1, false));
+        }
     }
     
     /**
@@ -307,7 +624,7 @@ public class YTable extends JTable implements YISharedModelComponent,
     void addViewListener(final YController controller, final YMasterDetailTable masterDetailTable) {
         this.controller = controller; 
 
-        this.getSelectionModel().addListSelectionListener(new ListSelectionListener() {
+        this.selectionListener = new ListSelectionListener() {
             public void valueChanged(ListSelectionEvent e) {
                 if (!e.getValueIsAdjusting())  { // && !sorter.isSortingHappening()) {
                     if (!ignoreSelection) {
@@ -330,7 +647,8 @@ public class YTable extends JTable implements YISharedModelComponent,
                     }   
                 }
             }
-        });
+        };
+        this.getSelectionModel().addListSelectionListener(selectionListener);
         this.addMouseListener(new MouseAdapter() {
             public void mouseClicked(MouseEvent e) { 
                 if (e.getClickCount() == 2) {
@@ -365,6 +683,10 @@ public class YTable extends JTable implements YISharedModelComponent,
      */
     public void setColumns(YColumn[] columns) {
         this.columns = columns;
+        tableModel.clearCaches();
+        for (int i=0; i < columns.length; i++) {
+            columns[i].getYProperty().addMvcNameCounter(mvcNameCounter);
+        }
         DefaultTableColumnModel columnModel = new DefaultTableColumnModel();
         this.setColumnModel(columnModel);
         for (int i=0; i < columns.length; i++) {
@@ -414,8 +736,11 @@ public class YTable extends JTable implements YISharedModelComponent,
      * @param editable  if the given row/column is editable
      */
     public void setEditable(int row, int column, boolean editable) {
-        String key = getKey(row, column);
-        editableCells.put(key, new Boolean(editable));
+        int rowKey = getRowKey(row, true);
+        if (row >= 0 && rowKey < 0) {
+            return;
+        }
+        editableCells.put(rowKey, column, Boolean.valueOf(editable));
     }
     
     /**
@@ -431,12 +756,15 @@ public class YTable extends JTable implements YISharedModelComponent,
      *                      (if null, defaultColor is used)
      */
     public void setForegroundColor(int row, int column, Color defaultColor, Color selectedColor) {
-        String key = getKey(row, column);
-        foregroundColors.put(key, defaultColor);
+        int rowKey = getRowKey(row, true);
+        if (row >= 0 && rowKey < 0) {
+            return;
+        }
+        foregroundColors.put(rowKey, column, defaultColor);
         if (selectedColor != null) {
-            selectedForegroundColors.put(key, selectedColor);
+            selectedForegroundColors.put(rowKey, column, selectedColor);
         } else {
-            selectedForegroundColors.put(key, defaultColor);
+            selectedForegroundColors.put(rowKey, column, defaultColor);
         }
     }
     
@@ -453,38 +781,144 @@ public class YTable extends JTable implements YISharedModelComponent,
      *                      (if null, defaultColor is used)
      */
     public void setBackgroundColor(int row, int column, Color defaultColor, Color selectedColor) {
-        String key = getKey(row, column);
-        backgroundColors.put(key, defaultColor);
+        int rowKey = getRowKey(row, true);
+        if (row >= 0 && rowKey < 0) {
+            return;
+        }
+        backgroundColors.put(rowKey, column, defaultColor);
         if (selectedColor != null) {
-            selectedBackgroundColors.put(key, selectedColor);
+            selectedBackgroundColors.put(rowKey, column, selectedColor);
         } else {
-            selectedBackgroundColors.put(key, defaultColor);
+            selectedBackgroundColors.put(rowKey, column, defaultColor);
         }
     }
     
     /**
-     * Helper method for HashMaps used in the table implementation.
+     * Helper method for cell attributes used in the table implementation.
      * If method doesn't find value for given row and column,
      * it will try to find it with just given column. If value still is
      * not found, the method will try to find it with just given row.
      * 
      * @param row (that holds value)
      * @param col (that holds value)
-     * @param map the hash map that has row/column specific values
+     * @param attributes the row/column specific values
      * @return value (if not found null is returned)
      */
-    private Object getValue(int row, int col, HashMap map) {
-        Object obj = map.get(getKey(row, col));
-        if (obj == null) {
-            obj = map.get(getKey(-1, col));
-            if (obj == null) {
-                obj = map.get(getKey(row, -1));
+    private Object getValue(int row, int col, YCellAttributes attributes) {
+        return attributes.get(getRowKey(row, false), col);
+    }
+    
+    /**
+     * Converts view row to the row key of cell attributes.
+     * 
+     * @param row       the view row, -1 for all rows
+     * @param create    true if a new key may be created for a row object
+     * @return          the row key, -1 if the row has no key (also when
+     *                  the row object is not loaded from data provider)
+     */
+    private int getRowKey(int row, boolean create) {
+        if (row < 0 || cellRowMode == CELL_ROWS_BY_VIEW_INDEX) {
+            return row;
+        } else if (cellRowMode == CELL_ROWS_BY_MODEL_INDEX) {
+            return filter.modelIndex(sorter.modelIndex(row));
+        } else {
+            Object rowObject = getObject(row);
+            if (rowObject == null) {
+                return -1;
             }
-            if (obj == null) {
-                obj = map.get(getKey(-1, -1));
+            Integer key = (Integer) rowObjectKeys.get(rowObject);
+            if (key == null) {
+                if (!create) {
+                    return -1;
+                }
+                key = new Integer(nextRowObjectKey++);
+                rowObjectKeys.put(rowObject, key);
             }
+            return key.intValue();
+        }
+    }
+    
+    /**
+     * Removes the row key and the cell attributes of a row object 
+     * (in CELL_ROWS_BY_OBJECT mode).
+     * 
+     * @param rowObject the row object
+     */
+    private void removeRowObjectKey(Object rowObject) {
+        Integer key = (Integer) rowObjectKeys.remove(rowObject);
+        if (key != null) {
+            int row = key.intValue();
+            editors.removeRow(row);
+            renderers.removeRow(row);
+            editableCells.removeRow(row);
+            foregroundColors.removeRow(row);
+            selectedForegroundColors.removeRow(row);
+            backgroundColors.removeRow(row);
+            selectedBackgroundColors.removeRow(row);
+        }
+    }
+    
+    /**
+     * Removes row keys and cell attributes of row objects, which 
+     * are not in the table model any more (in CELL_ROWS_BY_OBJECT mode).
+     */
+    private void retainRowObjectKeys() {
+        if (rowObjectKeys.isEmpty()) {
+            return;
+        }
+        Set current = Collections.newSetFromMap(new IdentityHashMap());
+        if (pagedRows == null) {
+            current.addAll(data);
+        }
+        Iterator it = new ArrayList(rowObjectKeys.keySet()).iterator();
+        while (it.hasNext()) {
+            Object rowObject = it.next();
+            if (!current.contains(rowObject)) {
+                removeRowObjectKey(rowObject);
+            }
+        }
+    }
+    
+    /**
+     * @return how rows of cell attributes are identified
+     * @see #setCellRowMode(int)
+     */
+    public int getCellRowMode() {
+        return cellRowMode;
+    }
+    
+    /**
+     * Sets how rows of cell specific settings (editors, renderers, colors and
+     * editable states) are identified. By default settings are bound to view
+     * rows, so they stay in the same position when the table is sorted. 
+     * CELL_ROWS_BY_MODEL_INDEX binds settings to table model rows and 
+     * CELL_ROWS_BY_OBJECT to row objects, so settings move with the rows
+     * when the table is sorted or filtered. In all modes, the row given 
+     * to the setter methods is the current view row.
+     * <p>
+     * In CELL_ROWS_BY_OBJECT mode, settings are removed with their row objects
+     * (removeRow, setModelValue), and settings for rows not loaded from 
+     * the data provider are ignored.
+     * <p>
+     * Changing the mode clears row and cell specific settings 
+     * (column and table settings are kept).
+     * 
+     * @param cellRowMode   CELL_ROWS_BY_VIEW_INDEX, CELL_ROWS_BY_MODEL_INDEX 
+     *                      or CELL_ROWS_BY_OBJECT
+     */
+    public void setCellRowMode(int cellRowMode) {
+        if (cellRowMode != this.cellRowMode) {
+            this.cellRowMode = cellRowMode;
+            editors.clearRows();
+            renderers.clearRows();
+            editableCells.clearRows();
+            foregroundColors.clearRows();
+            selectedForegroundColors.clearRows();
+            backgroundColors.clearRows();
+            selectedBackgroundColors.clearRows();
+            rowObjectKeys.clear();
+            nextRowObjectKey = 0;
         }
-        return obj;
     }
     /**
      * Returns foreground cell color. 
@@ -554,8 +988,9 @@ public class YTable extends JTable implements YISharedModelComponent,
     * @see javax.swing.JTable#isCellEditable(int, int)
     */
     public boolean isCellEditable(int row, int col) {
-        // the table must be editable before any cell is editable...
-        if (!this.isEditable()) {
+        // the table must be editable before any cell is editable,
+        // rows of a data provider are never editable...
+        if (!this.isEditable() || pagedRows != null) {
             return false;
         }
         col = this.convertColumnIndexToModel(col);
@@ -575,7 +1010,7 @@ public class YTable extends JTable implements YISharedModelComponent,
      * Editable setting for the whole table or YColumn is not cleared. 
      */
     public void clearEditableCells() {
-        this.editableCells = new HashMap();
+        this.editableCells.clear();
     }
     
     /**
@@ -596,6 +1031,7 @@ public class YTable extends JTable implements YISharedModelComponent,
      * @param row         the specified position where the new row is inserted
      */
     public void addRow(Object obj, boolean setSelected, int row) {
+        checkNotDataProvider("added");
         if (row < 0) {
             this.data.add(obj);
             this.modelCollection.add(obj);
@@ -622,8 +1058,12 @@ public class YTable extends JTable implements YISharedModelComponent,
      * @return the removed object
      */
     public Object removeRow(int row) {
+        checkNotDataProvider("removed");
         Object obj = this.data.remove(row);
         modelCollection.remove(obj);
+        if (!rowObjectKeys.isEmpty()) {
+            removeRowObjectKey(obj);
+        }
         tableModel.fireTableRowsDeleted(row, row);
         return obj;
     }
@@ -635,9 +1075,11 @@ public class YTable extends JTable implements YISharedModelComponent,
      * @return true if row was found and removed
      */
     public boolean removeRow(Object obj) {
-        if (this.data.remove(obj)) {
-            this.modelCollection.remove(obj);
-            tableModel.fireTableDataChanged();
+        checkNotDataProvider("removed");
+        int row = this.data.indexOf(obj);
+        if (row >= 0) {
+            // the sorter removes the row without sorting again
+            removeRow(row);
             return true;
         }
         return false;
@@ -660,15 +1102,19 @@ public class YTable extends JTable implements YISharedModelComponent,
     /**
      * Sets selected row. It is assumed that row POJOs
      * implement <code>equals</code> so that the row can be 
-     * identified by given object.
+     * identified by given object. In data provider mode only
+     * loaded rows are searched.
      * 
      * @param obj   the object to be selected
      * @return      true, if row was identified and selected
      */
     public boolean setSelectedRow(Object obj) {
         for (int i=0; i < this.getRowCount(); i++) {
+            if (!isRowLoaded(i)) {
+                continue;
+            }
             Object rowObject = this.getObject(i);
-            if (rowObject.equals(obj)) {
+            if (rowObject != null && rowObject.equals(obj)) {
                 this.setSelectedRow(i);
                 return true;
             }
@@ -718,6 +1164,9 @@ public class YTable extends JTable implements YISharedModelComponent,
                 // (returning directly true for performance reasons)
                 return true;                
             }
+            if (model instanceof YCollectionBaseline) {
+                return ((YCollectionBaseline) model).equalsCollection(modelCollection);
+            }
             boolean equals = YCoreToolkit.equalsCollection(modelCollection, (Collection) model);
             return equals;
         } catch (Exception ex) {
@@ -728,6 +1177,87 @@ public class YTable extends JTable implements YISharedModelComponent,
         }
     }
 
+    /**
+     * Creates copy-on-write baseline of the table Collection. Returns null
+     * (so that cloneModel is used), if copyOnWriteBaseline is false or if 
+     * cloneModel or equalsModel is overridden.
+     * 
+     * @see fi.mmm.yhteinen.swing.core.YIBaselineModelComponent#createBaseline()
+     */
+    public YIModelBaseline createBaseline() {
+        if (!copyOnWriteBaseline || overridesMethod("cloneModel", null) ||
+                overridesMethod("equalsModel", new Class[] {Object.class})) {
+            baseline = null;
+        } else {
+            baseline = new YCollectionBaseline(modelCollection);
+        }
+        return baseline;
+    }
+    
+    private boolean overridesMethod(String methodName, Class[] paramClasses) {
+        try {
+            return getClass().getMethod(methodName, paramClasses).getDeclaringClass() != YTable.class;
+        } catch (NoSuchMethodException ex) {
+            return false;
+        }
+    }
+    
+    /**
+     * @return if copy-on-write baseline is used in change tracking (default false)
+     * @see #createBaseline()
+     */
+    public boolean isCopyOnWriteBaseline() {
+        return copyOnWriteBaseline;
+    }
+    
+    /**
+     * Sets if copy-on-write baseline is used in change tracking instead
+     * of cloneModel. Copy-on-write baseline can detect, but cannot cancel 
+     * changes made directly to row objects outside the table, so it 
+     * should be used only if rows are changed via the table.
+     * 
+     * @param copyOnWriteBaseline if copy-on-write baseline should be used
+     */
+    public void setCopyOnWriteBaseline(boolean copyOnWriteBaseline) {
+        this.copyOnWriteBaseline = copyOnWriteBaseline;
+    }
+    
+    /*
+     *  (non-Javadoc)
+     * @see javax.swing.JTable#tableChanged(javax.swing.event.TableModelEvent)
+     */
+    public void tableChanged(TableModelEvent e) {
+        if (tableModel != null && !tableModel.notifying && !filter.isNotifying() && !sorter.isNotifying()) {
+            // table sorter notified directly (getModel().fireTableDataChanged()):
+            tableModel.clearCaches();
+        }
+        super.tableChanged(e);
+    }
+    
+    /**
+     * @return if cell values are cached per row
+     * @see #setRowValueCache(boolean)
+     */
+    public boolean isRowValueCache() {
+        return rowValueCache;
+    }
+    
+    /**
+     * Sets if table model caches cell values per row, so the row
+     * objects are not read again when the table is repainted (for 
+     * example when scrolling). This is meant for read-only tables with 
+     * large data. The cache is cleared whenever the table model is 
+     * notified (setModelValue, addRow, fireTableDataChanged etc.), so
+     * if row objects are changed outside the table, the table model 
+     * must be notified. The cache is not used in data provider mode.
+     * 
+     * @param rowValueCache if cell values should be cached
+     */
+    public void setRowValueCache(boolean rowValueCache) {
+        this.rowValueCache = rowValueCache;
+        tableModel.clearRowValues();
+    }
+
     /**
      * Adds property values for table columns with given property name.
      * The parameter propertyValue holds values for column.
@@ -1116,10 +1646,6 @@ public class YTable extends JTable implements YISharedModelComponent,
         return true;
     }
     
-    private String getKey(int row, int column) {
-        return row+","+column;
-    }
-    
     /**
      * Method tries to ensure that given row is visible. 
      * This method may be used when table is embedded into a scroll pane.
@@ -1146,9 +1672,12 @@ public class YTable extends JTable implements YISharedModelComponent,
      * @param renderer  the renderer
      */
     public void setEditorAndRenderer(int row, int column, TableCellEditor editor, TableCellRenderer renderer) {
-        String key = getKey(row, column);
-        editors.put(key, editor);
-        renderers.put(key, renderer);
+        int rowKey = getRowKey(row, true);
+        if (row >= 0 && rowKey < 0) {
+            return;
+        }
+        editors.put(rowKey, column, editor);
+        renderers.put(rowKey, column, renderer);
     }
     
     /*
@@ -1156,19 +1685,8 @@ public class YTable extends JTable implements YISharedModelComponent,
      * @see javax.swing.JTable#getCellEditor(int, int)
      */
     public TableCellEditor getCellEditor(int row, int column) {
-        TableCellEditor editor = (TableCellEditor) editors.get(getKey(row, column));
-        if (editor == null) {
-            // no editor specified for the cell, checking if specified for the column...
-            editor = (TableCellEditor) editors.get(getKey(-1, column));
-            if (editor == null) {
-                // checking if editor specified just for the row ...
-                editor = (TableCellEditor) editors.get(getKey(row, -1));
-                if (editor == null){
-                	// checking if editor specified the whole table
-                	editor = (TableCellEditor) editors.get(getKey(-1, -1));
-                }
-            }
-        }
+        // cell, column, row and the whole table editor are searched in this order:
+        TableCellEditor editor = (TableCellEditor) getValue(row, column, editors);
         if (editor != null) {
             return editor;
         } else {
@@ -1181,19 +1699,18 @@ public class YTable extends JTable implements YISharedModelComponent,
      * @see javax.swing.JTable#getCellRenderer(int, int)
      */
     public TableCellRenderer getCellRenderer(int row, int column) {
-        TableCellRenderer renderer = (TableCellRenderer) renderers.get(getKey(row, column));
-        if (renderer == null) {
-            // no renderer specified for the cell, checking if specified for the column...
-            renderer = (TableCellRenderer) renderers.get(getKey(-1, column));
-            if (renderer == null) {
-                // checking if renderer is specified just for the row ...
-                renderer = (TableCellRenderer) renderers.get(getKey(row, -1));
-                if (renderer == null){
-                	// checking if renderer specified the whole table
-                	renderer = (TableCellRenderer) renderers.get(getKey(-1, -1));
-                }
+        if (!isRowLoaded(row)) {
+            if (loadingRenderer == null) {
+                loadingRenderer = new YTableCellRenderer(new YTableFormatter() {
+                    public String format(Object item, int row, int column) {
+                        return loadingText;
+                    }
+                });
             }
+            return loadingRenderer;
         }
+        // cell, column, row and the whole table renderer are searched in this order:
+        TableCellRenderer renderer = (TableCellRenderer) getValue(row, column, renderers);
         if (renderer != null) {
             return renderer;
         } else {
@@ -1227,6 +1744,97 @@ public class YTable extends JTable implements YISharedModelComponent,
      */
     private class YTableModel extends AbstractTableModel {
         
+        // accessors of column MVC_NAMEs, resolved again if MVC_NAME of a column changes
+        private YPropertyAccessor[] accessors = null;
+        private int accessorsModCount;
+        
+        // column classes found from data, null if not searched yet
+        private Class[] columnClasses = null;
+        // true if a column class was not found from loaded rows of data provider
+        private boolean unknownColumnClasses = false;
+        
+        // cached cell values of rows (for rowValueCache)
+        private Object[][] rowValues = null;
+        
+        // true while this model is notifying listeners
+        private boolean notifying = false;
+        
+        /**
+         * Clears cached accessors, column classes and row values.
+         */
+        void clearCaches() {
+            accessors = null;
+            columnClasses = null;
+            rowValues = null;
+        }
+        
+        void clearRowValues() {
+            rowValues = null;
+        }
+        
+        /**
+         * Column classes not found from loaded rows are searched 
+         * again (called when rows are loaded from data provider).
+         */
+        void clearUnknownColumnClasses() {
+            if (unknownColumnClasses && columnClasses != null) {
+                for (int i=0; i < columnClasses.length; i++) {
+                    if (columnClasses[i] == Object.class) {
+                        columnClasses[i] = null;
+                    }
+                }
+            }
+            unknownColumnClasses = false;
+        }
+        
+        /**
+         * @param columnIndex   the column
+         * @return              the accessor of column MVC_NAME or null if column 
+         *                      is not connected to a POJO field
+         */
+        private YPropertyAccessor getAccessor(int columnIndex) {
+            if (accessors == null || accessorsModCount != mvcNameCounter.getCount()) {
+                accessorsModCount = mvcNameCounter.getCount();
+                YPropertyAccessor[] resolved = new YPropertyAccessor[columns.length];
+                boolean changed = (accessors == null || accessors.length != resolved.length);
+                for (int i=0; i < resolved.length; i++) {
+                    resolved[i] = columns[i].getPropertyAccessor();
+                    changed = changed || resolved[i] != accessors[i];
+                }
+                if (changed) {
+                    columnClasses = null;
+                    rowValues = null;
+                }
+                accessors = resolved;
+            }
+            return accessors[columnIndex];
+        }
+        
+        /*
+         *  (non-Javadoc)
+         * @see javax.swing.table.AbstractTableModel#fireTableChanged(javax.swing.event.TableModelEvent)
+         */
+        public void fireTableChanged(TableModelEvent e) {
+            if (e.getType() == TableModelEvent.UPDATE && e.getFirstRow() != TableModelEvent.HEADER_ROW &&
+                    e.getLastRow() != Integer.MAX_VALUE) {
+                // only some rows have been updated
+                if (rowValues != null) {
+                    for (int i=e.getFirstRow(); i <= e.getLastRow() && i < rowValues.length; i++) {
+                        rowValues[i] = null;
+                    }
+                }
+            } else {
+                columnClasses = null;
+                rowValues = null;
+            }
+            notifying = true;
+            try {
+                super.fireTableChanged(e);
+            } finally {
+                notifying = false;
+            }
+        }
+        
         /*
          *  (non-Javadoc)
          * @see javax.swing.table.TableModel#getColumnClass(int)
@@ -1239,17 +1847,38 @@ public class YTable extends JTable implements YISharedModelComponent,
                     return editorClass;
                 }
             }
-            // otherwise searching for an object in the column
+            YPropertyAccessor accessor = getAccessor(columnIndex);
+            if (columnClasses == null) {
+                columnClasses = new Class[columns.length];
+            }
+            if (columnClasses[columnIndex] == null) {
+                Class columnClass = findColumnClass(accessor);
+                if (pagedRows != null && columnClass == Object.class) {
+                    // searching again when more rows have been loaded
+                    unknownColumnClasses = true;
+                }
+                columnClasses[columnIndex] = columnClass;
+            }
+            return columnClasses[columnIndex];
+        }
+        
+        /**
+         * Searches for a not-null object in the column.
+         * 
+         * @param accessor  the accessor of the column
+         * @return          the class of the object or Object.class if not found
+         */
+        private Class findColumnClass(YPropertyAccessor accessor) {
             Object columnObj = null;
-            if (data != null) {
-                String fieldName = (String) columns[columnIndex].
-                getYProperty().get(YIComponent.MVC_NAME);
-                // iterating rows until a not-null object in the column is found...
-                for (int i=0; i < data.size() && columnObj == null; i++) {
-                    Object row = data.get(i);
+            if (data != null && accessor != null) {
+                // iterating rows until a not-null object in the column is found
+                // (only loaded rows in data provider mode)...
+                Iterator it = (pagedRows != null) ? pagedRows.loadedRows() : data.iterator();
+                while (it.hasNext() && columnObj == null) {
+                    Object row = it.next();
                     if (row != null) {
                         try {
-                            columnObj = YCoreToolkit.getBeanValue(row, fieldName);
+                            columnObj = YCoreToolkit.getBeanValue(row, accessor);
                         } catch (Exception ignored) {
                             // don't care about exceptions, the row may hold null values... 
                             // we just want to dig out some Object from any row 
@@ -1298,15 +1927,29 @@ public class YTable extends JTable implements YISharedModelComponent,
             if (data == null) return null;
             // using reflection to get value from table model collection...
             Object obj = data.get(rowIndex);
-            String fieldName = (String) columns[columnIndex].
-                getYProperty().get(YIComponent.MVC_NAME);
-            if( fieldName == null ) {
+            if (obj == null && pagedRows != null) {
+                // not loaded yet
+                return null;
+            }
+            YPropertyAccessor accessor = getAccessor(columnIndex);
+            if( accessor == null ) {
                 // column is not connected to any POJO field, returning the whole POJO:
                 return obj;
             } else { 
+                Object[] values = null;
+                if (rowValueCache && pagedRows == null) {
+                    values = getRowValues(rowIndex);
+                    if (values[columnIndex] != NOT_CACHED) {
+                        return values[columnIndex];
+                    }
+                }
                 // finding data for the column from a row POJO
                 try {
-                    return YCoreToolkit.getBeanValue(obj, fieldName);
+                    Object value = YCoreToolkit.getBeanValue(obj, accessor);
+                    if (values != null) {
+                        values[columnIndex] = value;
+                    }
+                    return value;
                 } catch (Exception e) {
                     controller.modelGetValueFailed(new YModelGetValueException(e,
                             YTable.this));
@@ -1315,19 +1958,37 @@ public class YTable extends JTable implements YISharedModelComponent,
             return null;
         }
         
+        /**
+         * @param rowIndex  the row
+         * @return          cached values of the row (NOT_CACHED if not read yet)
+         */
+        private Object[] getRowValues(int rowIndex) {
+            if (rowValues == null || rowValues.length != data.size()) {
+                rowValues = new Object[data.size()][];
+            }
+            Object[] values = rowValues[rowIndex];
+            if (values == null) {
+                values = new Object[columns.length];
+                Arrays.fill(values, NOT_CACHED);
+                rowValues[rowIndex] = values;
+            }
+            return values;
+        }
+        
         /*
          *  (non-Javadoc)
          * @see javax.swing.table.TableModel#setValueAt(java.lang.Object, int, int)
          */
         public void setValueAt(Object value, int row, int col) {
+            // the model collection would be overwritten with null in data provider mode
+            checkNotDataProvider("edited");
             if (data != null) {
                 Boolean readOnly = (Boolean) getYProperty().get(YIComponent.READ_ONLY);
                 if (readOnly == null || !readOnly.booleanValue()) {
                     Object rowObject = data.get(row);
-                    String fieldName = (String) columns[col].
-                        getYProperty().get(YIComponent.MVC_NAME);
+                    YPropertyAccessor accessor = getAccessor(col);
                     
-                    if (fieldName == null) {
+                    if (accessor == null) {
                         // the column is not connected to any special POJO field, updating the whole row POJO:
                         // checking if value has truly changed:
                         if (ObjectUtils.equals(rowObject, value)) {
@@ -1341,7 +2002,7 @@ public class YTable extends JTable implements YISharedModelComponent,
                         // checking if value has truly changed:
                         try {
                             if (ObjectUtils.equals(value, 
-                                    YCoreToolkit.getBeanValue(rowObject, fieldName))) {
+                                    YCoreToolkit.getBeanValue(rowObject, accessor))) {
                                 return;
                             }
                         } catch (Exception ex) {
@@ -1349,7 +2010,11 @@ public class YTable extends JTable implements YISharedModelComponent,
                         }
 
                         try {
-                            YCoreToolkit.setBeanValue(rowObject, fieldName, value);
+                            if (baseline != null) {
+                                // copying the row before the first change
+                                baseline.beforeRowChange(rowObject);
+                            }
+                            accessor.setValue(rowObject, value);
                         } catch (Exception ex) {
                             controller.modelSetValueFailed(new YModelSetValueException(ex,
                                     YTable.this, value));
@@ -0,0 +1,935 @@
+/* Copyright (C) 2005 Ministry of Agriculture and Forestry of Finland */
+package fi.mmm.yhteinen.swing.core.component.table;
+
+import java.awt.Cursor;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableModel;
+
+import fi.mmm.yhteinen.swing.core.tools.YCoreToolkit;
+import fi.mmm.yhteinen.swing.core.tools.YPropertyAccessor;
+import fi.mmm.yhteinen.swing.core.worker.SwingWorker;
+
+/**
+ * YTableFilter is a decorator for the YTable table model, which hides
+ * rows that are not accepted by column filters (YIColumnFilter) or
+ * the quick search text. YTableSorter sorts the rows of this model.
+ * Like YTableSorter, this class does not copy the data, but maintains
+ * a map from the row indexes of this model to the row indexes of
+ * the underlying model.
+ * <p>
+ * Column values are read into per-column indexes (values of each row
+ * and rows of each distinct value), so each filter is tested once per
+ * distinct value. If a filter is narrowed (a column filter is added or
+ * the quick search text is extended), only the currently visible rows
+ * are tested. Row inserts, deletes and updates of the underlying model
+ * update the indexes of the changed rows only. The indexes are dropped
+ * when all the data or the table structure changes.
+ * Single row inserts, deletes and updates are forwarded as
+ * row events, so YTableSorter can maintain it's row order.
+ * <p>
+ * Large tables may be filtered in a background thread (see
+ * setBackgroundThreshold), like YTableSorter sorts them.
+ * <p>
+ * Use YTable filter methods instead of this class directly.
+ *
+ * @author Tomi Tuomainen
+ * @see YTable#addColumnFilter(int, YIColumnFilter)
+ * @see YTable#setQuickSearch(String)
+ */
+public class YTableFilter extends AbstractTableModel {
+
+    private TableModel tableModel;
+    private YTable table;
+
+    // column (Integer) -> List of YIColumnFilters
+    private Map columnFilters = new HashMap();
+    // lower case quick search text or null
+    private String quickSearch = null;
+
+    // visible model rows in model order, null if not filtering
+    private int[] visibleRows = null;
+    // column indexes, created when needed
+    private ColumnIndex[] indexes = null;
+
+    // true while notifying listeners about filter changes
+    private boolean notifying = false;
+
+    // the number of rows, after which rows are filtered in a background thread
+    private int backgroundThreshold = Integer.MAX_VALUE;
+    // the running background filter or null
+    private BackgroundFilter backgroundFilter;
+
+    /**
+     * @param table         the table
+     * @param tableModel    the table model to be filtered
+     */
+    public YTableFilter(YTable table, TableModel tableModel) {
+        this.table = table;
+        this.tableModel = tableModel;
+        tableModel.addTableModelListener(new TableModelHandler());
+    }
+
+    /**
+     * @return true if any column filter or quick search is set
+     */
+    public boolean isFiltering() {
+        return !columnFilters.isEmpty() || quickSearch != null;
+    }
+
+    /**
+     * Adds a filter for a column. Only the visible rows are tested.
+     *
+     * @param column    the model column
+     * @param filter    the filter
+     */
+    public void addColumnFilter(int column, YIColumnFilter filter) {
+        Integer key = new Integer(column);
+        List filters = (List) columnFilters.get(key);
+        if (filters == null) {
+            filters = new ArrayList(1);
+            columnFilters.put(key, filters);
+        }
+        filters.add(filter);
+        if (visibleRows == null || backgroundFilter != null) {
+            refilter();
+        } else {
+            // narrowing, testing only the visible rows:
+            ColumnIndex index = getIndex(column);
+            int[] rows = new int[visibleRows.length];
+            int size = 0;
+            for (int i = 0; i < visibleRows.length; i++) {
+                if (filter.accept(index.values[visibleRows[i]])) {
+                    rows[size++] = visibleRows[i];
+                }
+            }
+            visibleRows = trim(rows, size);
+        }
+        filterChanged();
+    }
+
+    /**
+     * Removes a filter from a column.
+     *
+     * @param column    the model column
+     * @param filter    the filter
+     */
+    public void removeColumnFilter(int column, YIColumnFilter filter) {
+        Integer key = new Integer(column);
+        List filters = (List) columnFilters.get(key);
+        if (filters != null && filters.remove(filter)) {
+            if (filters.isEmpty()) {
+                columnFilters.remove(key);
+            }
+            refilter();
+            filterChanged();
+        }
+    }
+
+    /**
+     * Removes all the column filters and the quick search.
+     */
+    public void clearFilters() {
+        if (isFiltering()) {
+            columnFilters.clear();
+            quickSearch = null;
+            refilter();
+            filterChanged();
+        }
+    }
+
+    /**
+     * @return the quick search text (in lower case) or null
+     */
+    public String getQuickSearch() {
+        return quickSearch;
+    }
+
+    /**
+     * Sets the quick search text. A row is shown, if the text (case
+     * insensitive) is found in any column of the row. Formatted values
+     * are used for columns with formatter. If the text contains the previous
+     * search text, only the visible rows are tested.
+     *
+     * @param text  the search text, null or empty string shows all rows
+     */
+    public void setQuickSearch(String text) {
+        String search = (text == null || text.length() == 0) ? null : text.toLowerCase();
+        String previous = quickSearch;
+        if (search == null ? previous == null : search.equals(previous)) {
+            return;
+        }
+        quickSearch = search;
+        if (search != null && previous != null && visibleRows != null
+                && backgroundFilter == null && search.indexOf(previous) >= 0) {
+            // narrowing, testing only the visible rows:
+            int[] rows = new int[visibleRows.length];
+            int size = 0;
+            for (int i = 0; i < visibleRows.length; i++) {
+                if (matchesQuickSearch(visibleRows[i])) {
+                    rows[size++] = visibleRows[i];
+                }
+            }
+            visibleRows = trim(rows, size);
+        } else {
+            refilter();
+        }
+        filterChanged();
+    }
+
+    /**
+     * @return true while this model is notifying listeners about a filter change
+     */
+    boolean isNotifying() {
+        return notifying;
+    }
+
+    private void filterChanged() {
+        notifying = true;
+        try {
+            fireTableDataChanged();
+        } finally {
+            notifying = false;
+        }
+    }
+
+    /**
+     * Filters all the rows. Tables with at least backgroundThreshold
+     * rows are filtered in a background thread.
+     */
+    private void refilter() {
+        cancelBackgroundFilter();
+        if (!isFiltering()) {
+            visibleRows = null;
+            return;
+        }
+        int rowCount = tableModel.getRowCount();
+        if (rowCount >= backgroundThreshold) {
+            startBackgroundFilter(rowCount);
+            return;
+        }
+        ColumnIndex[] columnIndexes = new ColumnIndex[tableModel.getColumnCount()];
+        for (int column = 0; column < columnIndexes.length; column++) {
+            if (quickSearch != null || columnFilters.containsKey(new Integer(column))) {
+                columnIndexes[column] = getIndex(column);
+            }
+        }
+        visibleRows = filterRows(columnIndexes, rowCount, columnFilters, quickSearch, new AtomicBoolean(false));
+    }
+
+    /**
+     * Filters rows using column indexes: each filter is tested once
+     * for each distinct value in the column. The indexes of filtered
+     * columns (and all columns for quick search) must exist.
+     *
+     * @param columnIndexes the column indexes
+     * @param rowCount      the number of model rows
+     * @param filters       column (Integer) -> List of YIColumnFilters
+     * @param search        the quick search text or null
+     * @param cancelled     stops filtering when set
+     * @return              the accepted model rows, null if cancelled
+     */
+    private static int[] filterRows(ColumnIndex[] columnIndexes, int rowCount,
+            Map filters, String search, AtomicBoolean cancelled) {
+        boolean[] rejected = new boolean[rowCount];
+        Iterator it = filters.entrySet().iterator();
+        while (it.hasNext() && !cancelled.get()) {
+            Map.Entry entry = (Map.Entry) it.next();
+            List columnFilters = (List) entry.getValue();
+            ColumnIndex index = columnIndexes[((Integer) entry.getKey()).intValue()];
+            Iterator values = index.valueRows.entrySet().iterator();
+            while (values.hasNext()) {
+                Map.Entry valueEntry = (Map.Entry) values.next();
+                if (!accept(columnFilters, valueEntry.getKey())) {
+                    ((RowList) valueEntry.getValue()).mark(rejected);
+                }
+            }
+        }
+        if (search != null) {
+            boolean[] found = new boolean[rowCount];
+            for (int column = 0; column < columnIndexes.length && !cancelled.get(); column++) {
+                columnIndexes[column].markText(search, found);
+            }
+            for (int row = 0; row < rowCount; row++) {
+                rejected[row] = rejected[row] || !found[row];
+            }
+        }
+        if (cancelled.get()) {
+            return null;
+        }
+        int[] rows = new int[rowCount];
+        int size = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (!rejected[row]) {
+                rows[size++] = row;
+            }
+        }
+        return trim(rows, size);
+    }
+
+    /**
+     * Starts filtering in a background thread. The previously visible
+     * rows are shown until the filtering has finished.
+     *
+     * @param rowCount  the number of rows in table model
+     */
+    private void startBackgroundFilter(int rowCount) {
+        backgroundFilter = new BackgroundFilter();
+        backgroundFilter.start();
+        setBusy(true);
+        if (visibleRows != null) {
+            // the rows may have been deleted meanwhile
+            int size = 0;
+            while (size < visibleRows.length && visibleRows[size] < rowCount) {
+                size++;
+            }
+            visibleRows = trim(visibleRows, size);
+        }
+    }
+
+    private void cancelBackgroundFilter() {
+        if (backgroundFilter != null) {
+            backgroundFilter.cancelled.set(true);
+            backgroundFilter = null;
+            setBusy(false);
+        }
+    }
+
+    /**
+     * Shows wait cursor in the table while filtering in background.
+     */
+    private void setBusy(boolean busy) {
+        table.setCursor(busy ? Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR) : null);
+    }
+
+    /**
+     * @return true if rows are currently filtered in a background thread
+     */
+    public boolean isFilteringInBackground() {
+        return backgroundFilter != null;
+    }
+
+    /**
+     * @return the number of rows, after which rows are filtered in a background thread
+     */
+    public int getBackgroundThreshold() {
+        return backgroundThreshold;
+    }
+
+    /**
+     * Sets the number of rows, after which rows are filtered in a background
+     * thread. While filtering, the previously visible rows are shown and the
+     * table shows wait cursor. A new filter change (for example the next
+     * quick search keystroke) cancels the running filtering. Column values
+     * are read from a snapshot of row objects, and filters and formatters
+     * are called in the background thread. Narrowing a filter tests only
+     * the visible rows in the event dispatch thread, as before.
+     * By default, filtering is never done in background (Integer.MAX_VALUE).
+     *
+     * @param backgroundThreshold   the number of rows
+     */
+    public void setBackgroundThreshold(int backgroundThreshold) {
+        this.backgroundThreshold = backgroundThreshold;
+    }
+
+    private static boolean accept(List filters, Object value) {
+        for (int i = 0; i < filters.size(); i++) {
+            if (!((YIColumnFilter) filters.get(i)).accept(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tests a single model row (without indexes).
+     */
+    private boolean acceptRow(int modelRow) {
+        Iterator it = columnFilters.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry entry = (Map.Entry) it.next();
+            int column = ((Integer) entry.getKey()).intValue();
+            if (!accept((List) entry.getValue(), tableModel.getValueAt(modelRow, column))) {
+                return false;
+            }
+        }
+        return quickSearch == null || matchesQuickSearch(modelRow);
+    }
+
+    private boolean matchesQuickSearch(int modelRow) {
+        for (int column = 0; column < tableModel.getColumnCount(); column++) {
+            String text = (indexes != null && indexes[column] != null) ?
+                    indexes[column].getText(modelRow) :
+                    getText(tableModel.getValueAt(modelRow, column), modelRow, column);
+            if (text.indexOf(quickSearch) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the lower case text of the value for quick search
+     */
+    private String getText(Object value, int modelRow, int column) {
+        YTableFormatter formatter = getFormatter(column);
+        String text;
+        if (formatter != null) {
+            text = formatter.format(value, modelRow, column);
+        } else {
+            text = (value == null) ? null : value.toString();
+        }
+        return (text == null) ? "" : text.toLowerCase();
+    }
+
+    private YTableFormatter getFormatter(int column) {
+        YColumn[] columns = table.getColumns();
+        return (columns == null) ? null : columns[column].getFormatter();
+    }
+
+    private ColumnIndex getIndex(int column) {
+        if (indexes == null || indexes.length != tableModel.getColumnCount()) {
+            indexes = new ColumnIndex[tableModel.getColumnCount()];
+        }
+        if (indexes[column] == null) {
+            Object[] values = new Object[tableModel.getRowCount()];
+            for (int row = 0; row < values.length; row++) {
+                values[row] = tableModel.getValueAt(row, column);
+            }
+            indexes[column] = new ColumnIndex(column, values, getFormatter(column));
+        }
+        return indexes[column];
+    }
+
+    private static int[] trim(int[] rows, int size) {
+        if (size == rows.length) {
+            return rows;
+        }
+        int[] trimmed = new int[size];
+        System.arraycopy(rows, 0, trimmed, 0, size);
+        return trimmed;
+    }
+
+    /**
+     * @param modelRow  the model row
+     * @return          the position of the row in visibleRows, or
+     *                  (-(insertion point) - 1) if the row is not visible
+     */
+    private int findVisible(int modelRow) {
+        int low = 0;
+        int high = visibleRows.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (visibleRows[mid] < modelRow) {
+                low = mid + 1;
+            } else if (visibleRows[mid] > modelRow) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * @param row   the row of this model
+     * @return      the row of the underlying model
+     */
+    public int modelIndex(int row) {
+        return (visibleRows == null) ? row : visibleRows[row];
+    }
+
+    // TableModel interface methods
+
+    public int getRowCount() {
+        return (visibleRows == null) ? tableModel.getRowCount() : visibleRows.length;
+    }
+
+    public int getColumnCount() {
+        return tableModel.getColumnCount();
+    }
+
+    public String getColumnName(int column) {
+        return tableModel.getColumnName(column);
+    }
+
+    public Class getColumnClass(int column) {
+        return tableModel.getColumnClass(column);
+    }
+
+    public boolean isCellEditable(int row, int column) {
+        return tableModel.isCellEditable(modelIndex(row), column);
+    }
+
+    public Object getValueAt(int row, int column) {
+        return tableModel.getValueAt(modelIndex(row), column);
+    }
+
+    public void setValueAt(Object aValue, int row, int column) {
+        tableModel.setValueAt(aValue, modelIndex(row), column);
+    }
+
+    /**
+     * Values of a column: the value of each model row, and the rows
+     * of each distinct value.
+     */
+    private static class ColumnIndex {
+        private int column;
+        private Object[] values;
+        private YTableFormatter formatter;
+        // distinct value -> RowList
+        private Map valueRows;
+        // lower case texts of rows for quick search, created when needed
+        private String[] texts;
+
+        ColumnIndex(int column, Object[] values, YTableFormatter formatter) {
+            this.column = column;
+            this.values = values;
+            this.formatter = formatter;
+            valueRows = new HashMap();
+            for (int row = 0; row < values.length; row++) {
+                Object value = values[row];
+                RowList rows = (RowList) valueRows.get(value);
+                if (rows == null) {
+                    rows = new RowList();
+                    valueRows.put(value, rows);
+                }
+                rows.add(row);
+            }
+        }
+
+        String getText(int row) {
+            // a cancelled background filter may still be reading the texts
+            String[] rowTexts = texts;
+            if (rowTexts == null) {
+                rowTexts = new String[values.length];
+                texts = rowTexts;
+            }
+            if (rowTexts[row] == null) {
+                rowTexts[row] = getText(values[row], row);
+            }
+            return rowTexts[row];
+        }
+
+        /**
+         * Sets the new value of an updated row.
+         *
+         * @return false if the previous value was not found
+         */
+        boolean setValue(int row, Object value) {
+            if (!removeValue(values[row], row)) {
+                return false;
+            }
+            values[row] = value;
+            addValue(value, row);
+            if (texts != null) {
+                texts[row] = null;
+            }
+            return true;
+        }
+
+        /**
+         * Adds values of inserted rows, shifting the following rows.
+         */
+        void insertRows(int first, Object[] inserted) {
+            shiftRows(first, inserted.length);
+            values = insert(values, first, inserted.length);
+            if (texts != null) {
+                texts = (String[]) insert(texts, first, inserted.length);
+            }
+            for (int i = 0; i < inserted.length; i++) {
+                values[first + i] = inserted[i];
+                addValue(inserted[i], first + i);
+            }
+        }
+
+        /**
+         * Removes values of deleted rows, shifting the following rows.
+         *
+         * @return false if a value was not found
+         */
+        boolean deleteRows(int first, int count) {
+            for (int row = first; row < first + count; row++) {
+                if (!removeValue(values[row], row)) {
+                    return false;
+                }
+            }
+            shiftRows(first + count, -count);
+            values = delete(values, first, count);
+            if (texts != null) {
+                texts = (String[]) delete(texts, first, count);
+            }
+            return true;
+        }
+
+        private void addValue(Object value, int row) {
+            RowList rows = (RowList) valueRows.get(value);
+            if (rows == null) {
+                rows = new RowList();
+                valueRows.put(value, rows);
+            }
+            rows.add(row);
+        }
+
+        private boolean removeValue(Object value, int row) {
+            // the hash code of a (row) value may have changed meanwhile
+            RowList rows = (RowList) valueRows.get(value);
+            if (rows == null || !rows.remove(row)) {
+                return false;
+            }
+            if (rows.size == 0) {
+                valueRows.remove(value);
+            }
+            return true;
+        }
+
+        private void shiftRows(int from, int delta) {
+            Iterator it = valueRows.values().iterator();
+            while (it.hasNext()) {
+                ((RowList) it.next()).shift(from, delta);
+            }
+        }
+
+        private String getText(Object value, int row) {
+            String text;
+            if (formatter != null) {
+                text = formatter.format(value, row, column);
+            } else {
+                text = (value == null) ? null : value.toString();
+            }
+            return (text == null) ? "" : text.toLowerCase();
+        }
+
+        /**
+         * Marks rows that contain the search text.
+         */
+        void markText(String search, boolean[] found) {
+            if (formatter != null) {
+                // formatted text may depend on the row
+                for (int row = 0; row < values.length; row++) {
+                    if (!found[row] && getText(row).indexOf(search) >= 0) {
+                        found[row] = true;
+                    }
+                }
+            } else {
+                Iterator it = valueRows.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry entry = (Map.Entry) it.next();
+                    RowList rows = (RowList) entry.getValue();
+                    if (getText(entry.getKey(), rows.rows[0]).indexOf(search) >= 0) {
+                        rows.mark(found);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Growable list of model rows.
+     */
+    private static class RowList {
+        private int[] rows = new int[1];
+        private int size = 0;
+
+        void add(int row) {
+            if (size == rows.length) {
+                int[] grown = new int[size * 2];
+                System.arraycopy(rows, 0, grown, 0, size);
+                rows = grown;
+            }
+            rows[size++] = row;
+        }
+
+        /**
+         * @return false if the row was not found
+         */
+        boolean remove(int row) {
+            for (int i = 0; i < size; i++) {
+                if (rows[i] == row) {
+                    // the order of rows is not maintained
+                    rows[i] = rows[--size];
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Adds delta to rows starting from the given row.
+         */
+        void shift(int from, int delta) {
+            for (int i = 0; i < size; i++) {
+                if (rows[i] >= from) {
+                    rows[i] += delta;
+                }
+            }
+        }
+
+        void mark(boolean[] marks) {
+            for (int i = 0; i < size; i++) {
+                marks[rows[i]] = true;
+            }
+        }
+    }
+
+    private static Object[] insert(Object[] array, int index, int count) {
+        Object[] grown = (Object[]) Array.newInstance(
+                array.getClass().getComponentType(), array.length + count);
+        System.arraycopy(array, 0, grown, 0, index);
+        System.arraycopy(array, index, grown, index + count, array.length - index);
+        return grown;
+    }
+
+    private static Object[] delete(Object[] array, int index, int count) {
+        Object[] shrunk = (Object[]) Array.newInstance(
+                array.getClass().getComponentType(), array.length - count);
+        System.arraycopy(array, 0, shrunk, 0, index);
+        System.arraycopy(array, index + count, shrunk, index, shrunk.length - index);
+        return shrunk;
+    }
+
+    /**
+     * Filters a snapshot of rows in a background thread and swaps the
+     * result in the event dispatch thread, if the filtering has not been
+     * cancelled meanwhile. The existing column indexes are used, missing
+     * ones are created from the snapshot.
+     */
+    private class BackgroundFilter extends SwingWorker {
+        private AtomicBoolean cancelled = new AtomicBoolean(false);
+        private RuntimeException error;
+
+        private Object[] rows;
+        private ColumnIndex[] columnIndexes;
+        private YPropertyAccessor[] accessors;
+        private YTableFormatter[] formatters;
+        private Map filters;
+        private String search;
+
+        BackgroundFilter() {
+            // the snapshot is taken in the event dispatch thread
+            rows = table.getModelRowSnapshot();
+            int count = tableModel.getColumnCount();
+            columnIndexes = new ColumnIndex[count];
+            if (indexes != null && indexes.length == count) {
+                System.arraycopy(indexes, 0, columnIndexes, 0, count);
+            }
+            accessors = new YPropertyAccessor[count];
+            formatters = new YTableFormatter[count];
+            for (int i = 0; i < count; i++) {
+                accessors[i] = table.getColumns()[i].getPropertyAccessor();
+                formatters[i] = getFormatter(i);
+            }
+            filters = new HashMap();
+            Iterator it = columnFilters.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry entry = (Map.Entry) it.next();
+                filters.put(entry.getKey(), new ArrayList((List) entry.getValue()));
+            }
+            search = quickSearch;
+        }
+
+        public Object construct() {
+            try {
+                for (int column = 0; column < columnIndexes.length && !cancelled.get(); column++) {
+                    if (columnIndexes[column] == null && 
+                            (search != null || filters.containsKey(new Integer(column)))) {
+                        Object[] values = new Object[rows.length];
+                        for (int row = 0; row < rows.length && !cancelled.get(); row++) {
+                            values[row] = getValue(rows[row], column);
+                        }
+                        columnIndexes[column] = new ColumnIndex(column, values, formatters[column]);
+                    }
+                }
+                if (cancelled.get()) {
+                    return null;
+                }
+                return filterRows(columnIndexes, rows.length, filters, search, cancelled);
+            } catch (RuntimeException ex) {
+                error = ex;
+                return null;
+            }
+        }
+
+        private Object getValue(Object row, int column) {
+            if (accessors[column] == null || row == null) {
+                return row;
+            }
+            try {
+                return YCoreToolkit.getBeanValue(row, accessors[column]);
+            } catch (RuntimeException ex) {
+                return null; // table shows the error when the value is rendered
+            }
+        }
+
+        public void finished() {
+            if (backgroundFilter != this) {
+                return; // cancelled
+            }
+            backgroundFilter = null;
+            setBusy(false);
+            if (error != null) {
+                throw error;
+            }
+            int[] accepted = (int[]) get();
+            if (accepted != null) {
+                Object selected = table.startFiltering();
+                visibleRows = accepted;
+                indexes = columnIndexes;
+                filterChanged();
+                table.restoreSelection(selected);
+            }
+        }
+    }
+
+    private class TableModelHandler implements TableModelListener {
+        public void tableChanged(TableModelEvent e) {
+            if (backgroundFilter != null || !updateIndexes(e)) {
+                // all the values may have changed:
+                indexes = null;
+            }
+            if (!isFiltering()) {
+                fireTableChanged(e);
+                return;
+            }
+            if (backgroundFilter == null && e.getFirstRow() != TableModelEvent.HEADER_ROW &&
+                    e.getFirstRow() == e.getLastRow()) {
+                if (e.getType() == TableModelEvent.INSERT) {
+                    rowInserted(e.getFirstRow());
+                    return;
+                } else if (e.getType() == TableModelEvent.DELETE) {
+                    rowDeleted(e.getFirstRow());
+                    return;
+                } else if (e.getType() == TableModelEvent.UPDATE) {
+                    rowUpdated(e.getFirstRow(), e.getColumn());
+                    return;
+                }
+            }
+            refilter();
+            if (e.getFirstRow() == TableModelEvent.HEADER_ROW) {
+                fireTableStructureChanged();
+            } else {
+                fireTableDataChanged();
+            }
+        }
+
+        /**
+         * Updates the column indexes for inserted, deleted or updated rows.
+         *
+         * @return false if the indexes must be created again
+         */
+        private boolean updateIndexes(TableModelEvent e) {
+            if (indexes == null) {
+                return true;
+            }
+            int first = e.getFirstRow();
+            int last = e.getLastRow();
+            if (first == TableModelEvent.HEADER_ROW || last == Integer.MAX_VALUE ||
+                    first < 0 || last < first || indexes.length != tableModel.getColumnCount()) {
+                return false;
+            }
+            int count = last - first + 1;
+            int rowCount = tableModel.getRowCount();
+            for (int column = 0; column < indexes.length; column++) {
+                ColumnIndex index = indexes[column];
+                if (index == null) {
+                    continue;
+                }
+                if (e.getType() == TableModelEvent.INSERT) {
+                    if (first > index.values.length) {
+                        return false;
+                    }
+                    Object[] inserted = new Object[count];
+                    for (int i = 0; i < count; i++) {
+                        inserted[i] = tableModel.getValueAt(first + i, column);
+                    }
+                    index.insertRows(first, inserted);
+                } else if (last >= index.values.length) {
+                    return false;
+                } else if (e.getType() == TableModelEvent.DELETE) {
+                    if (!index.deleteRows(first, count)) {
+                        return false;
+                    }
+                } else if (e.getColumn() == TableModelEvent.ALL_COLUMNS || e.getColumn() == column) {
+                    for (int row = first; row <= last; row++) {
+                        if (!index.setValue(row, tableModel.getValueAt(row, column))) {
+                            return false;
+                        }
+                    }
+                }
+                if (index.values.length != rowCount) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void rowInserted(int modelRow) {
+            // shifting the following rows
+            for (int i = 0; i < visibleRows.length; i++) {
+                if (visibleRows[i] >= modelRow) {
+                    visibleRows[i]++;
+                }
+            }
+            if (acceptRow(modelRow)) {
+                int position = -(findVisible(modelRow) + 1);
+                insertVisible(position, modelRow);
+                fireTableRowsInserted(position, position);
+            }
+        }
+
+        private void rowDeleted(int modelRow) {
+            int position = findVisible(modelRow);
+            if (position >= 0) {
+                int[] rows = new int[visibleRows.length - 1];
+                System.arraycopy(visibleRows, 0, rows, 0, position);
+                System.arraycopy(visibleRows, position + 1, rows, position, rows.length - position);
+                visibleRows = rows;
+            }
+            // shifting the following rows
+            for (int i = 0; i < visibleRows.length; i++) {
+                if (visibleRows[i] > modelRow) {
+                    visibleRows[i]--;
+                }
+            }
+            if (position >= 0) {
+                fireTableRowsDeleted(position, position);
+            }
+        }
+
+        private void rowUpdated(int modelRow, int column) {
+            int position = findVisible(modelRow);
+            boolean accepted = acceptRow(modelRow);
+            if (position >= 0 && accepted) {
+                fireTableChanged(new TableModelEvent(YTableFilter.this, position, position, column));
+            } else if (position >= 0) {
+                int[] rows = new int[visibleRows.length - 1];
+                System.arraycopy(visibleRows, 0, rows, 0, position);
+                System.arraycopy(visibleRows, position + 1, rows, position, rows.length - position);
+                visibleRows = rows;
+                fireTableRowsDeleted(position, position);
+            } else if (accepted) {
+                position = -(position + 1);
+                insertVisible(position, modelRow);
+                fireTableRowsInserted(position, position);
+            }
+        }
+
+        private void insertVisible(int position, int modelRow) {
+            int[] rows = new int[visibleRows.length + 1];
+            System.arraycopy(visibleRows, 0, rows, 0, position);
+            rows[position] = modelRow;
+            System.arraycopy(visibleRows, position, rows, position + 1, visibleRows.length - position);
+            visibleRows = rows;
+        }
+    }
+
+}
@@ -5,6 +5,8 @@ import java.awt.*;
 import java.awt.event.*;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.*;
 import javax.swing.event.TableModelEvent;
@@ -13,6 +15,8 @@ import javax.swing.table.*;
 
 import fi.mmm.yhteinen.swing.core.savechanges.YSaveChangesHandler;
 import fi.mmm.yhteinen.swing.core.tools.YCoreToolkit;
+import fi.mmm.yhteinen.swing.core.tools.YPropertyAccessor;
+import fi.mmm.yhteinen.swing.core.worker.SwingWorker;
 
 /**
  * YTableSorter is a decorator for TableModels; adding sorting
@@ -64,6 +68,9 @@ import fi.mmm.yhteinen.swing.core.tools.YCoreToolkit;
  * 	- added save changes and sorting enabled checking for column header clicks
  *  - using YColumn Comparator for sorting 
  *  - using null safe comparators from YCoreToolkit
+ *  - sort keys are extracted once per row and sorted with YSortEngine
+ *  - large tables may be sorted in a background thread 
+ *  - sorting is done by YIDataProvider in data provider mode
  * 
  * @author Philip Milne
  * @author Brendon McLean 
@@ -94,9 +101,23 @@ public class YTableSorter extends AbstractTableModel {
 //        }
 //    };
 
-    private Row[] viewToModel;
+    // the number of rows, after which rows are sorted in parallel (T.T.)
+    private static final int DEFAULT_PARALLEL_THRESHOLD = 20000;
+
+    private int[] viewToModel;
     private int[] modelToView;
 
+    private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+    // the number of rows, after which rows are sorted in a background thread (T.T.)
+    private int backgroundThreshold = Integer.MAX_VALUE;
+    // the latest row order, kept on screen while sorting in background
+    private int[] previousViewToModel;
+    // the running background sort or null
+    private BackgroundSort backgroundSort;
+    // true while notifying listeners about a changed row order (T.T.)
+    private boolean notifying = false;
+
     private JTableHeader tableHeader;
     private MouseListener mouseListener;
     private TableModelListener tableModelListener;
@@ -118,8 +139,12 @@ public class YTableSorter extends AbstractTableModel {
     }
 
     private void clearSortingState() {
+        if (viewToModel != null) {
+            previousViewToModel = viewToModel;
+        }
         viewToModel = null;
         modelToView = null;
+        cancelBackgroundSort();
     }
 
     public TableModel getTableModel() {
@@ -178,9 +203,26 @@ public class YTableSorter extends AbstractTableModel {
         return getDirective(column).direction;
     }
 
+    /**
+     * @return true while this model is notifying listeners about a changed row order
+     */
+    boolean isNotifying() {
+        return notifying;
+    }
+
+    private void orderChanged() {
+        notifying = true;
+        try {
+            fireTableDataChanged();
+        } finally {
+            notifying = false;
+        }
+    }
+
     private void sortingStatusChanged() {
         clearSortingState();
-        fireTableDataChanged();
+        sortDataProvider();
+        orderChanged();
         if (tableHeader != null) {
             tableHeader.repaint();
         }
@@ -240,29 +282,170 @@ public class YTableSorter extends AbstractTableModel {
     	}
     }
 
-    private Row[] getViewToModel() {
+    /**
+     * Passes the sorting columns to the data provider of the 
+     * table, if table is in data provider mode (T.T.)
+     */
+    void sortDataProvider() {
+        YPagedRows pagedRows = table.getPagedRows();
+        if (pagedRows != null) {
+            String[] properties = new String[sortingColumns.size()];
+            boolean[] descending = new boolean[properties.length];
+            for (int i = 0; i < properties.length; i++) {
+                Directive directive = (Directive) sortingColumns.get(i);
+                YPropertyAccessor accessor = table.getColumns()[directive.column].getPropertyAccessor();
+                properties[i] = (accessor == null) ? null : accessor.getPath();
+                descending[i] = (directive.direction == DESCENDING);
+            }
+            pagedRows.setSort(properties, descending);
+        }
+    }
+
+    private int[] getViewToModel() {
         if (viewToModel == null) {
             int tableModelRowCount = tableModel.getRowCount();
-            viewToModel = new Row[tableModelRowCount];
-            for (int row = 0; row < tableModelRowCount; row++) {
-                viewToModel[row] = new Row(row);
+            if (isSorting() && tableModelRowCount >= backgroundThreshold) {
+                viewToModel = startBackgroundSort(tableModelRowCount);
+            } else if (isSorting()) {
+                viewToModel = sortRows(tableModelRowCount);
+            } else {
+                viewToModel = unsortedRows(tableModelRowCount);
             }
+        }
+        return viewToModel;
+    }
+
+    private static int[] unsortedRows(int rowCount) {
+        int[] rows = new int[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+            rows[row] = row;
+        }
+        return rows;
+    }
+
+    /**
+     * Starts sorting in a background thread. The previous row
+     * order is used until the sorting has finished (T.T.)
+     *
+     * @param rowCount  the number of rows in table model
+     * @return          the row order to be used meanwhile
+     */
+    private int[] startBackgroundSort(int rowCount) {
+        backgroundSort = new BackgroundSort();
+        backgroundSort.start();
+        setBusy(true);
+        if (previousViewToModel != null && previousViewToModel.length == rowCount) {
+            return previousViewToModel;
+        }
+        return unsortedRows(rowCount);
+    }
+
+    private void cancelBackgroundSort() {
+        if (backgroundSort != null) {
+            backgroundSort.cancelled.set(true);
+            backgroundSort = null;
+            setBusy(false);
+        }
+    }
+
+    /**
+     * Shows wait cursor in the table header while sorting in background.
+     */
+    private void setBusy(boolean busy) {
+        if (tableHeader != null) {
+            tableHeader.setCursor(busy ? Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR) : null);
+            tableHeader.repaint();
+        }
+    }
+
+    /**
+     * @return true if rows are currently sorted in a background thread
+     */
+    public boolean isSortingInBackground() {
+        return backgroundSort != null;
+    }
+
+    /**
+     * @return the number of rows, after which rows are sorted in a background thread
+     */
+    public int getBackgroundThreshold() {
+        return backgroundThreshold;
+    }
+
+    /**
+     * Sets the number of rows, after which rows are sorted in a background
+     * thread. While sorting, the previous row order is shown and the table 
+     * header shows wait cursor. A new header click cancels the running sort. 
+     * Row values are read from a snapshot of row objects, and formatters 
+     * that sort by formatter are called in the background thread. 
+     * By default, sorting is never done in background (Integer.MAX_VALUE).
+     *
+     * @param backgroundThreshold   the number of rows
+     */
+    public void setBackgroundThreshold(int backgroundThreshold) {
+        this.backgroundThreshold = backgroundThreshold;
+    }
 
-            if (isSorting()) {
-                Arrays.sort(viewToModel);
+    /**
+     * Sorts rows by the sorting columns. The values (formatted if
+     * column formatter isSortByFormatter) and comparators are resolved
+     * once per column, not for each comparison (T.T.)
+     *
+     * @param rowCount  the number of rows in table model
+     * @return          model indexes in view order
+     */
+    private int[] sortRows(int rowCount) {
+        YSortEngine.Key[] keys = new YSortEngine.Key[sortingColumns.size()];
+        boolean[] descending = new boolean[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            Directive directive = (Directive) sortingColumns.get(i);
+            int column = directive.column;
+            YTableFormatter formatter = table.getColumns()[column].getFormatter();
+            if (formatter != null && !formatter.isSortByFormatter()) {
+                formatter = null;
+            }
+            Object[] values = new Object[rowCount];
+            for (int row = 0; row < rowCount; row++) {
+                values[row] = tableModel.getValueAt(row, column);
+                if (formatter != null) {
+                    values[row] = formatter.format(values[row], row, column);
+                }
             }
+            keys[i] = YSortEngine.createKey(values, getComparator(column));
+            descending[i] = (directive.direction == DESCENDING);
         }
-        return viewToModel;
+        return YSortEngine.sort(keys, descending, rowCount, parallelThreshold);
+    }
+
+    /**
+     * @return the number of rows, after which rows are sorted in several threads
+     */
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * Sets the number of rows, after which rows are sorted in
+     * several threads. Use Integer.MAX_VALUE to disable parallel sorting.
+     *
+     * @param parallelThreshold the number of rows
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
     }
 
     public int modelIndex(int viewIndex) {
+        if (table.getPagedRows() != null) {
+            // the data provider has sorted the rows (T.T.)
+            return viewIndex;
+        }
         // TODO: test if this fix really works...
-        Row[] viewToModel = getViewToModel();
+        int[] viewToModel = getViewToModel();
         if (viewToModel.length <= viewIndex) {
             viewIndex = viewToModel.length-1;
         }
         
-        return getViewToModel()[viewIndex].modelIndex;
+        return viewToModel[viewIndex];
     }
 
 
@@ -312,56 +495,284 @@ public class YTableSorter extends AbstractTableModel {
 
 
     
-    private class Row implements Comparable {
-        private int modelIndex;
+    /**
+     * Adds inserted model rows to the current row order with binary
+     * search (T.T.)
+     *
+     * @return false if the row order couldn't be updated
+     */
+    private boolean rowsInserted(int first, int last) {
+        int count = last - first + 1;
+        if (tableModel.getRowCount() != viewToModel.length + count) {
+            return false;
+        }
+        int[] order = new int[viewToModel.length + count];
+        int size = 0;
+        for (int i = 0; i < viewToModel.length; i++) {
+            int modelRow = viewToModel[i];
+            order[size++] = (modelRow >= first) ? modelRow + count : modelRow;
+        }
+        RowOrder rowOrder = new RowOrder();
+        int position = -1;
+        for (int modelRow = first; modelRow <= last; modelRow++) {
+            position = rowOrder.findPosition(order, size, modelRow);
+            System.arraycopy(order, position, order, position + 1, size - position);
+            order[position] = modelRow;
+            size++;
+        }
+        viewToModel = order;
+        modelToView = null;
+        if (count == 1) {
+            fireTableRowsInserted(position, position);
+        } else {
+            fireTableDataChanged();
+        }
+        return true;
+    }
+
+    /**
+     * Removes deleted model rows from the current row order (T.T.)
+     *
+     * @return false if the row order couldn't be updated
+     */
+    private boolean rowsDeleted(int first, int last) {
+        int count = last - first + 1;
+        if (tableModel.getRowCount() != viewToModel.length - count) {
+            return false;
+        }
+        int[] order = new int[viewToModel.length - count];
+        int size = 0;
+        int removedView = -1;
+        for (int i = 0; i < viewToModel.length; i++) {
+            int modelRow = viewToModel[i];
+            if (modelRow >= first && modelRow <= last) {
+                removedView = i;
+            } else {
+                order[size++] = (modelRow > last) ? modelRow - count : modelRow;
+            }
+        }
+        viewToModel = order;
+        modelToView = null;
+        if (count == 1) {
+            fireTableRowsDeleted(removedView, removedView);
+        } else {
+            fireTableDataChanged();
+        }
+        return true;
+    }
 
-        public Row(int index) {
-            this.modelIndex = index;
+    /**
+     * Moves an updated model row to its new position in
+     * the current row order (T.T.)
+     *
+     * @return false if the row order couldn't be updated
+     */
+    private boolean rowUpdated(int modelRow) {
+        int rowCount = viewToModel.length;
+        if (tableModel.getRowCount() != rowCount || modelRow < 0 || modelRow >= rowCount) {
+            return false;
+        }
+        int oldView = getModelToView()[modelRow];
+        int[] order = new int[rowCount];
+        System.arraycopy(viewToModel, 0, order, 0, oldView);
+        System.arraycopy(viewToModel, oldView + 1, order, oldView, rowCount - oldView - 1);
+        int newView = new RowOrder().findPosition(order, rowCount - 1, modelRow);
+        System.arraycopy(order, newView, order, newView + 1, rowCount - 1 - newView);
+        order[newView] = modelRow;
+        viewToModel = order;
+        modelToView = null;
+        if (newView == oldView) {
+            fireTableRowsUpdated(newView, newView);
+        } else {
+            fireTableRowsDeleted(oldView, oldView);
+            fireTableRowsInserted(newView, newView);
+        }
+        return true;
+    }
+
+    /**
+     * Compares model rows in the same order as YSortEngine, so
+     * that a row can be placed into a sorted row order (T.T.)
+     */
+    private class RowOrder {
+        private int[] columns;
+        private boolean[] descending;
+        private YTableFormatter[] formatters;
+        private Comparator[] comparators;
+
+        RowOrder() {
+            int count = sortingColumns.size();
+            columns = new int[count];
+            descending = new boolean[count];
+            formatters = new YTableFormatter[count];
+            comparators = new Comparator[count];
+            for (int i = 0; i < count; i++) {
+                Directive directive = (Directive) sortingColumns.get(i);
+                YTableFormatter formatter = table.getColumns()[directive.column].getFormatter();
+                columns[i] = directive.column;
+                descending[i] = (directive.direction == DESCENDING);
+                if (formatter != null && formatter.isSortByFormatter()) {
+                    formatters[i] = formatter;
+                }
+                comparators[i] = getComparator(directive.column);
+            }
         }
 
         /**
-         * Customised for YTable formatters (T.T.)
+         * @param order     the sorted model rows
+         * @param size      the number of rows in order
+         * @param modelRow  the row to be placed
+         * @return          the view index for the row
          */
-        public int compareTo(Object o) {
-            int row1 = modelIndex;
-            int row2 = ((Row) o).modelIndex;
-
-            for (Iterator it = sortingColumns.iterator(); it.hasNext();) {
-                Directive directive = (Directive) it.next();
-                int column = directive.column;
-                
-                Object o1 = tableModel.getValueAt(row1, column);
-                Object o2 = tableModel.getValueAt(row2, column);
+        int findPosition(int[] order, int size, int modelRow) {
+            Object[] values = getValues(modelRow);
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                int comparison = compare(getValues(order[mid]), values);
+                if (comparison == 0) {
+                    // sorting is stable, equal rows are in model order
+                    comparison = order[mid] < modelRow ? -1 : 1;
+                }
+                if (comparison < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
 
-                YTableFormatter formatter = table.getColumns()[column].getFormatter();
-                if (formatter != null && formatter.isSortByFormatter()) {
-                	o1 = formatter.format(o1, row1, column);
-                	o2 = formatter.format(o2, row2, column);
+        private Object[] getValues(int modelRow) {
+            Object[] values = new Object[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                values[i] = tableModel.getValueAt(modelRow, columns[i]);
+                if (formatters[i] != null) {
+                    values[i] = formatters[i].format(values[i], modelRow, columns[i]);
                 }
-                
-                int comparison = 0;
-                // Define null less than everything, except null.
-                if (o1 == null && o2 == null) {
-                    comparison = 0;
-                } else if (o1 == null) {
-                    comparison = -1;
+            }
+            return values;
+        }
+
+        private int compare(Object[] values1, Object[] values2) {
+            for (int i = 0; i < columns.length; i++) {
+                Object o1 = values1[i];
+                Object o2 = values2[i];
+                int comparison;
+                // null is less than everything, except null
+                if (o1 == null) {
+                    comparison = (o2 == null) ? 0 : -1;
                 } else if (o2 == null) {
                     comparison = 1;
                 } else {
-                    comparison = getComparator(column).compare(o1, o2);
+                    comparison = comparators[i].compare(o1, o2);
                 }
                 if (comparison != 0) {
-                    return directive.direction == DESCENDING ? -comparison : comparison;
+                    return descending[i] ? -comparison : comparison;
                 }
             }
             return 0;
         }
     }
 
+    /**
+     * Sorts a snapshot of rows in a background thread and swaps the
+     * result in the event dispatch thread, if the sort has not been
+     * cancelled meanwhile (T.T.)
+     */
+    private class BackgroundSort extends SwingWorker {
+        private AtomicBoolean cancelled = new AtomicBoolean(false);
+        private RuntimeException error;
+
+        private Object[] rows;
+        private int[] columns;
+        private boolean[] descending;
+        private YPropertyAccessor[] accessors;
+        private YTableFormatter[] formatters;
+        private Comparator[] comparators;
+
+        BackgroundSort() {
+            // the snapshot is taken in the event dispatch thread
+            rows = table.getRowSnapshot();
+            int count = sortingColumns.size();
+            columns = new int[count];
+            descending = new boolean[count];
+            accessors = new YPropertyAccessor[count];
+            formatters = new YTableFormatter[count];
+            comparators = new Comparator[count];
+            for (int i = 0; i < count; i++) {
+                Directive directive = (Directive) sortingColumns.get(i);
+                YColumn column = table.getColumns()[directive.column];
+                columns[i] = directive.column;
+                descending[i] = (directive.direction == DESCENDING);
+                accessors[i] = column.getPropertyAccessor();
+                if (column.getFormatter() != null && column.getFormatter().isSortByFormatter()) {
+                    formatters[i] = column.getFormatter();
+                }
+                comparators[i] = getComparator(directive.column);
+            }
+        }
+
+        public Object construct() {
+            try {
+                YSortEngine.Key[] keys = new YSortEngine.Key[columns.length];
+                for (int i = 0; i < keys.length && !cancelled.get(); i++) {
+                    Object[] values = new Object[rows.length];
+                    for (int row = 0; row < rows.length && !cancelled.get(); row++) {
+                        values[row] = getValue(rows[row], i);
+                        if (formatters[i] != null) {
+                            values[row] = formatters[i].format(values[row], row, columns[i]);
+                        }
+                    }
+                    keys[i] = YSortEngine.createKey(values, comparators[i]);
+                }
+                if (cancelled.get()) {
+                    return null;
+                }
+                return YSortEngine.sort(keys, descending, rows.length, parallelThreshold, cancelled);
+            } catch (CancellationException ex) {
+                return null;
+            } catch (RuntimeException ex) {
+                error = ex;
+                return null;
+            }
+        }
+
+        private Object getValue(Object row, int i) {
+            if (accessors[i] == null || row == null) {
+                return row;
+            }
+            try {
+                return YCoreToolkit.getBeanValue(row, accessors[i]);
+            } catch (RuntimeException ex) {
+                return null; // table shows the error when the value is rendered
+            }
+        }
+
+        public void finished() {
+            if (backgroundSort != this) {
+                return; // cancelled
+            }
+            backgroundSort = null;
+            setBusy(false);
+            if (error != null) {
+                throw error;
+            }
+            int[] order = (int[]) get();
+            if (order != null) {
+                viewToModel = order;
+                modelToView = null;
+                orderChanged();
+            }
+        }
+    }
+
     private class TableModelHandler implements TableModelListener {
         public void tableChanged(TableModelEvent e) {
             // If we're not sorting by anything, just pass the event along.             
-            if (!isSorting()) {
+            // The data provider sorts the rows in data provider mode (T.T.)
+            if (!isSorting() || table.getPagedRows() != null) {
                 clearSortingState();
                 fireTableChanged(e);
                 return;
@@ -406,6 +817,22 @@ public class YTableSorter extends AbstractTableModel {
                 return;
             }
 
+            // Inserts, deletes and single row updates are applied to the 
+            // current row order without sorting all the rows again (T.T.)
+            if (viewToModel != null && backgroundSort == null
+                    && e.getLastRow() != Integer.MAX_VALUE) {
+                if (e.getType() == TableModelEvent.INSERT && 
+                        rowsInserted(e.getFirstRow(), e.getLastRow())) {
+                    return;
+                } else if (e.getType() == TableModelEvent.DELETE && 
+                        rowsDeleted(e.getFirstRow(), e.getLastRow())) {
+                    return;
+                } else if (e.getType() == TableModelEvent.UPDATE && 
+                        e.getFirstRow() == e.getLastRow() && rowUpdated(e.getFirstRow())) {
+                    return;
+                }
+            }
+
             // Something has happened to the data that may have invalidated the row order. 
             clearSortingState();
             fireTableDataChanged();
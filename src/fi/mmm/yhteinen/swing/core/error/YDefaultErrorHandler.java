@@ -33,7 +33,10 @@ public class YDefaultErrorHandler implements YIErrorHandler {
 	 */
 	public void handleException(Throwable ex, Window window) {
 		if (ex instanceof YMethodNotFoundException) {
-			logger.info(ex.getMessage());
+			// missing event methods are common, message is created only when logged
+			if (logger.isInfoEnabled()) {
+				logger.info(ex.getMessage());
+			}
 		} else if (ex instanceof YInvalidMVCNameException ||
 					ex instanceof YCloneModelException ||
 					ex instanceof YEqualsModelException ||
@@ -8,21 +8,61 @@ package fi.mmm.yhteinen.swing.core.error;
  * does not require you to implement event methods in controllers. 
  * However, this exception can be caught in YController error handler to decide,
  * what to do with it.
+ * <p>
+ * Since a missing event method is a normal situation, this exception
+ * is lightweight: stack trace is not filled and the message is
+ * created only when it is requested.
  * 
  * @author Tomi Tuomainen
  */
 public class YMethodNotFoundException extends YException {
 
+	private Class sourceClass;
+	private String methodName;
+	private Class[] paramClasses;
+	private String message;
+
 	/**
 	 * @param source			the source object
 	 * @param methodName 		the method that is not found
 	 * @param paramClasses		the method parameter classes
 	 */
 	public YMethodNotFoundException(Object source, String methodName, Class[] paramClasses) {
-		super(createMessage(source, methodName, paramClasses));
+		super();
+		this.sourceClass = source.getClass();
+		this.methodName = methodName;
+		this.paramClasses = paramClasses;
+	}
+
+	/*
+	 *  (non-Javadoc)
+	 * @see java.lang.Throwable#getMessage()
+	 */
+	public String getMessage() {
+		if (message == null) {
+			message = createMessage(sourceClass, methodName, paramClasses);
+		}
+		return message;
 	}
-	
-	private static String createMessage(Object source, String methodName, Class[] paramClasses) {
+
+	/**
+	 * The stack trace is not filled, since this exception is thrown
+	 * for every event that has no method in a controller.
+	 *
+	 * @see java.lang.Throwable#fillInStackTrace()
+	 */
+	public synchronized Throwable fillInStackTrace() {
+		return this;
+	}
+
+	/**
+	 * @return the name of the method that was not found
+	 */
+	public String getMethodName() {
+		return methodName;
+	}
+
+	private static String createMessage(Class sourceClass, String methodName, Class[] paramClasses) {
 		String params = "(";
 		if (paramClasses != null) {
 			for (int i=0; i < paramClasses.length; i++) {
@@ -31,7 +71,7 @@ public class YMethodNotFoundException extends YException {
 			}
 		}
 		params += ")";
-		return "Method " +methodName + params + " not found in " + source.getClass();
+		return "Method " +methodName + params + " not found in " + sourceClass;
 	}
-	
+
 }
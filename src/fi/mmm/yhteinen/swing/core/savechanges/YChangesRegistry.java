@@ -0,0 +1,129 @@
+/* Copyright (C) 2005 Ministry of Agriculture and Forestry of Finland */
+package fi.mmm.yhteinen.swing.core.savechanges;
+
+import java.awt.Component;
+import java.awt.Window;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.swing.SwingUtilities;
+
+import fi.mmm.yhteinen.swing.core.YController;
+import fi.mmm.yhteinen.swing.core.YIComponent;
+
+/**
+ * Static registry of controllers that have view changes. Controllers
+ * report their changed/unchanged transitions (YController setViewChanged)
+ * to the registry, so YSaveChangesHandler can skip searching
+ * the controllers of a window when nothing has changed.
+ * <p>
+ * Controllers which override hasViewChanges are always considered
+ * to have changes, since their state is not reported. Controllers are
+ * referenced weakly.
+ * <p>
+ * This class is meant for framework internal use.
+ *
+ * @author Tomi Tuomainen
+ * @see YSaveChangesHandler
+ */
+public class YChangesRegistry {
+
+    // controllers with view changes (or overridden hasViewChanges) -> null
+    private static Map changedControllers = new WeakHashMap();
+
+    // controller class -> Boolean (if hasViewChanges is overridden)
+    private static Map overriddenClasses = new ConcurrentHashMap();
+
+    /**
+     * Registers a new controller. This is called by YController.
+     *
+     * @param controller    the controller
+     */
+    public static void controllerCreated(YController controller) {
+        if (overridesHasViewChanges(controller.getClass())) {
+            synchronized (changedControllers) {
+                changedControllers.put(controller, null);
+            }
+        }
+    }
+
+    /**
+     * Records changed state of a controller. This is called by YController.
+     *
+     * @param controller    the controller
+     * @param changed       true if the controller has view changes
+     */
+    public static void setViewChanged(YController controller, boolean changed) {
+        synchronized (changedControllers) {
+            if (changed) {
+                changedControllers.put(controller, null);
+            } else if (!overridesHasViewChanges(controller.getClass())) {
+                changedControllers.remove(controller);
+            }
+        }
+    }
+
+    /**
+     * Checks if any controller in given component (or it's child components)
+     * may have view changes. Controllers which views are not in any window
+     * are included, since their parent controllers may be in the component.
+     *
+     * @param root  the component (usually a window)
+     * @return      false if no controller in the component has view changes
+     */
+    public static boolean mayHaveChanges(Component root) {
+        List controllers;
+        synchronized (changedControllers) {
+            if (changedControllers.isEmpty()) {
+                return false;
+            }
+            controllers = new ArrayList(changedControllers.keySet());
+        }
+        Iterator it = controllers.iterator();
+        while (it.hasNext()) {
+            YController controller = (YController) it.next();
+            while (controller != null) {
+                if (isInComponent(controller.getView(), root)) {
+                    return true;
+                }
+                controller = controller.getParent();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return  true if view is in the root or it's location is unknown
+     */
+    private static boolean isInComponent(YIComponent view, Component root) {
+        if (!(view instanceof Component) || root == null) {
+            return true;
+        }
+        Component comp = (Component) view;
+        if (comp == root || SwingUtilities.isDescendingFrom(comp, root)) {
+            return true;
+        }
+        // view not added to any window yet:
+        return !(comp instanceof Window) && SwingUtilities.getWindowAncestor(comp) == null;
+    }
+
+    private static boolean overridesHasViewChanges(Class controllerClass) {
+        Boolean overrides = (Boolean) overriddenClasses.get(controllerClass);
+        if (overrides == null) {
+            try {
+                Method method = controllerClass.getMethod("hasViewChanges", (Class[]) null);
+                overrides = Boolean.valueOf(method.getDeclaringClass() != YController.class);
+            } catch (NoSuchMethodException ex) {
+                overrides = Boolean.FALSE;
+            }
+            overriddenClasses.put(controllerClass, overrides);
+        }
+        return overrides.booleanValue();
+    }
+
+}
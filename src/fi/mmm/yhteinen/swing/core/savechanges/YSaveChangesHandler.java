@@ -53,7 +53,8 @@ public class YSaveChangesHandler {
      * has unsaved changes. 
      *  
      * Checking is done only if component's YIComponent.CHECK_CHANGES
-     * property has Boolean value true. 
+     * property has Boolean value true. Components of the window are
+     * searched only if YChangesRegistry has changed controllers in the window.
      * 
      * @param comp	the component that triggers unsaved changes checking
      * @return		true, if changes were saved
@@ -61,6 +62,9 @@ public class YSaveChangesHandler {
     public static boolean changesSavedInCurrentWindow(YIComponent comp) {
     	if (YUIToolkit.isPropertyTrue(comp, YIComponent.CHECK_CHANGES)) {
     		Component compToCheck = YUIToolkit.getCurrentWindow();
+    		if (!YChangesRegistry.mayHaveChanges(compToCheck)) {
+    			return true; // no controller of the window has changes
+    		}
     		return saveChangesRecursively(compToCheck);
     	}
     	return true;
@@ -81,6 +85,9 @@ public class YSaveChangesHandler {
     public static boolean changesSaved(YIComponent comp) {
     	if (YUIToolkit.isPropertyTrue(comp, YIComponent.CHECK_CHANGES) &&
     			comp instanceof Component) {
+    		if (!YChangesRegistry.mayHaveChanges((Component) comp)) {
+    			return true;
+    		}
     		return saveChangesRecursively((Component)comp);
     	}
     	return true;
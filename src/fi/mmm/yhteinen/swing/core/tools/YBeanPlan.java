@@ -0,0 +1,107 @@
+/* Copyright (C) 2005 Ministry of Agriculture and Forestry of Finland */
+package fi.mmm.yhteinen.swing.core.tools;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Copy and comparison plan of a Java bean class for YCoreToolkit
+ * deepCopyObject and equalsByGetters. Public getters (and the matching
+ * setters) of the class are searched only once and the plan is cached,
+ * so beans are not introspected on every call.
+ * <p>
+ * This class is for YCoreToolkit internal use.
+ *
+ * @author Tomi Tuomainen
+ */
+class YBeanPlan {
+
+    // Class -> YBeanPlan
+    private static final Map plans = new ConcurrentHashMap();
+
+    final boolean declaresEquals;
+    // public getters of the class and it's super classes (for equalsByGetters):
+    final Method[] getters;
+    // properties declared in the class itself (for deepCopyObject):
+    final Property[] copyProperties;
+
+    /**
+     * Returns the plan for the class.
+     *
+     * @param aClass    the bean class
+     * @return          the cached plan
+     */
+    static YBeanPlan getPlan(Class aClass) {
+        YBeanPlan plan = (YBeanPlan) plans.get(aClass);
+        if (plan == null) {
+            plan = new YBeanPlan(aClass);
+            plans.put(aClass, plan);
+        }
+        return plan;
+    }
+
+    private YBeanPlan(Class aClass) {
+        boolean equalsFound = false;
+        try {
+            aClass.getDeclaredMethod("equals", new Class[] {Object.class});
+            equalsFound = true;
+        } catch (Exception ignored) { }
+        declaresEquals = equalsFound;
+
+        ArrayList getterList = new ArrayList();
+        Class current = aClass;
+        while (current != null && !current.equals(Object.class)) {
+            Method[] methods = current.getDeclaredMethods();
+            for (int i = 0; i < methods.length; i++) {
+                if (isGetter(methods[i])) {
+                    getterList.add(methods[i]);
+                }
+            }
+            current = current.getSuperclass();
+        }
+        getters = (Method[]) getterList.toArray(new Method[getterList.size()]);
+
+        ArrayList propertyList = new ArrayList();
+        Method[] methods = aClass.getDeclaredMethods();
+        for (int i = 0; i < methods.length; i++) {
+            if (isGetter(methods[i])) {
+                propertyList.add(new Property(aClass, methods[i]));
+            }
+        }
+        copyProperties = (Property[]) propertyList.toArray(new Property[propertyList.size()]);
+    }
+
+    private static boolean isGetter(Method method) {
+        return method.getName().indexOf("get") == 0 &&
+            method.getParameterTypes().length == 0 &&
+            method.getModifiers() == Modifier.PUBLIC;
+    }
+
+    /**
+     * A property copied by deepCopyObject.
+     */
+    static class Property {
+
+        final Method getter;
+        // setter or null, if setter was not found with the getter type
+        final Method setter;
+        final String fieldName;
+        final boolean collection;
+
+        Property(Class aClass, Method getter) {
+            this.getter = getter;
+            this.fieldName = getter.getName().substring(3);
+            this.collection = getter.getReturnType().equals(Collection.class);
+            Method method = null;
+            try {
+                method = aClass.getMethod("set" + fieldName, new Class[] {getter.getReturnType()});
+            } catch (NoSuchMethodException ignored) { }
+            this.setter = method;
+        }
+    }
+
+}
@@ -0,0 +1,171 @@
+/* Copyright (C) 2005 Ministry of Agriculture and Forestry of Finland */
+package fi.mmm.yhteinen.swing.core.tools;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+
+import org.apache.commons.lang.SerializationException;
+import org.apache.commons.lang.SerializationUtils;
+import org.apache.log4j.Logger;
+
+import fi.mmm.yhteinen.swing.core.YIModelBaseline;
+import fi.mmm.yhteinen.swing.core.error.YCloneModelException;
+
+/**
+ * Copy-on-write baseline of a Collection model (used by YTable and YDualList).
+ * Instead of cloning the whole collection, the baseline stores
+ * references to the original row objects and a hash code of each row.
+ * A row is copied only when the component is about to change it
+ * (see beforeRowChange).
+ * <p>
+ * Changes made directly to row objects (not via the component)
+ * are detected by hash codes, but they cannot be restored. The hash 
+ * code is calculated from the fields of the row (and nested beans), 
+ * or from the version of YIVersionedBean.
+ *
+ * @author Tomi Tuomainen
+ */
+public class YCollectionBaseline implements YIModelBaseline {
+
+    private static Logger logger = Logger.getLogger(YCollectionBaseline.class);
+
+    private Class collectionClass;
+    private Object[] rows;
+    private int[] hashCodes;
+    // original row -> copy of the row before it was changed
+    private IdentityHashMap copies = new IdentityHashMap();
+    // original row -> index in rows
+    private IdentityHashMap indexes;
+
+    /**
+     * Creates baseline of the collection.
+     *
+     * @param collection    the collection, may be null
+     */
+    public YCollectionBaseline(Collection collection) {
+        if (collection != null) {
+            collectionClass = collection.getClass();
+            rows = collection.toArray();
+            hashCodes = new int[rows.length];
+            for (int i=0; i < rows.length; i++) {
+                hashCodes[i] = hashCode(rows[i]);
+            }
+        }
+    }
+
+    /**
+     * This should be called before the component changes
+     * a row object of the collection. The row is copied
+     * when it is changed the first time after the baseline was created.
+     *
+     * @param row   the row object to be changed
+     */
+    public void beforeRowChange(Object row) {
+        if (rows == null || row == null || copies.containsKey(row)) {
+            return;
+        }
+        if (indexes == null) {
+            indexes = new IdentityHashMap(rows.length);
+            for (int i=0; i < rows.length; i++) {
+                indexes.put(rows[i], new Integer(i));
+            }
+        }
+        Integer index = (Integer) indexes.get(row);
+        // not copying rows added after the baseline, or rows changed already outside the component
+        if (index != null && !isChanged(index.intValue())) {
+            copies.put(row, copy(row));
+        }
+    }
+
+    /**
+     * Checks if the collection equals this baseline. Rows are compared
+     * like in YCoreToolkit.equalsCollection.
+     *
+     * @param collection    the collection
+     * @return              true if collection has not changed
+     */
+    public boolean equalsCollection(Collection collection) {
+        if (rows == null || collection == null) {
+            return rows == null && collection == null;
+        } else if (rows.length != collection.size()) {
+            return false;
+        }
+        Iterator it = collection.iterator();
+        for (int i=0; i < rows.length; i++) {
+            Object row = it.next();
+            Object original = rows[i];
+            Object copy = copies.get(original);
+            if (copy != null) {
+                // row has been changed by the component, comparing to the copy...
+                if (!YCoreToolkit.getEqualityEngine().equalsObject(row, copy)) {
+                    return false;
+                }
+            } else if (isChanged(i)) {
+                // original row has been changed without the component
+                return false;
+            } else if (!YCoreToolkit.getEqualityEngine().equalsObject(row, original)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     *  (non-Javadoc)
+     * @see fi.mmm.yhteinen.swing.core.YIModelBaseline#restoreModel()
+     */
+    public Object restoreModel() {
+        if (rows == null) {
+            return null;
+        }
+        Collection result;
+        try {
+            result = (Collection) collectionClass.newInstance();
+        } catch (Exception ex) {
+            result = new ArrayList(rows.length);
+        }
+        for (int i=0; i < rows.length; i++) {
+            Object copy = copies.get(rows[i]);
+            if (copy != null) {
+                result.add(copy);
+            } else {
+                if (isChanged(i)) {
+                    logger.warn("Row " + rows[i] + " has been changed without the component, " +
+                            "changes cannot be cancelled.");
+                }
+                result.add(rows[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param index the index of original row
+     * @return      true if the hash code of the original row has changed
+     */
+    private boolean isChanged(int index) {
+        return hashCodes[index] != hashCode(rows[index]);
+    }
+
+    private static int hashCode(Object row) {
+        if (row instanceof YIVersionedBean) {
+            long version = ((YIVersionedBean) row).getBeanVersion();
+            return (int) (version ^ (version >>> 32));
+        }
+        return YReflectionEqualityEngine.hashObject(row);
+    }
+
+    private static Object copy(Object row) {
+        try {
+            return SerializationUtils.clone((Serializable) row);
+        } catch (ClassCastException ex) {
+            throw new YCloneModelException("Row " + row + " is not Serializable, so it cannot be copied.");
+        } catch (SerializationException ex) {
+            throw new YCloneModelException("Row " + row + " is not Serializable, so it cannot be copied.");
+        }
+    }
+
+}
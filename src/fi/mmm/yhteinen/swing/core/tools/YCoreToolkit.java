@@ -7,15 +7,21 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.security.AccessControlException;
 import java.text.Collator;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.commons.beanutils.NestedNullException;
-import org.apache.commons.beanutils.PropertyUtils;
 import org.apache.commons.lang.ObjectUtils;
-import org.apache.commons.lang.builder.EqualsBuilder;
 
+import fi.mmm.yhteinen.swing.core.binding.YBindings;
+import fi.mmm.yhteinen.swing.core.binding.YIControllerBinding;
 import fi.mmm.yhteinen.swing.core.error.YException;
 import fi.mmm.yhteinen.swing.core.error.YMethodNotFoundException;
 
@@ -66,11 +72,14 @@ public class YCoreToolkit {
             if (s1 == null) s1 = "";
             if (s2 == null) s2 = "";
             // using locale-specific Collator:
-            Collator c = Collator.getInstance();
-            return c.compare(s1, s2);
+            return getCollator().compare(s1, s2);
         }
     };
     
+    // Collator of LEXICAL_COMPARATOR and the default locale it was created for
+    private static Collator collator;
+    private static Locale collatorLocale;
+    
     /**
      * An empty parameter for a method invoked via reflection.
      */
@@ -81,6 +90,15 @@ public class YCoreToolkit {
      */
     public static final Class[] EMPTY_CLASS_PARAM = new Class[0];
     
+    // MethodKey -> Method (or METHOD_NOT_FOUND) for findMethod
+    private static final Map methodCache = new ConcurrentHashMap();
+    private static final Object METHOD_NOT_FOUND = new Object();
+    
+    private static volatile YIEqualityEngine equalityEngine = new YReflectionEqualityEngine();
+    
+    // the pool for parallel comparison and sorting, created when needed
+    private static ForkJoinPool parallelPool;
+    
     /**
      * Removes parameters in methodName: in other words, removes
      * all characters after '(' including '('.
@@ -117,6 +135,9 @@ public class YCoreToolkit {
 	 * NestedNullException is never raised: if a nested object is null, 
 	 * null will be returned. 
 	 * 
+	 * Getters are resolved only once for each bean class and field name
+	 * (see YPropertyAccessor).
+	 * 
 	 * @param obj 		the object
 	 * @param fieldName the field name in the object
 	 * @return 			the field value
@@ -128,7 +149,7 @@ public class YCoreToolkit {
 	 */
 	public static Object getBeanValue(Object obj, String fieldName){
 		try {
-			return PropertyUtils.getProperty(obj, fieldName);
+			return YPropertyAccessor.getAccessor(fieldName).getValue(obj);
 		} catch (NestedNullException nex) {
 			return null; // this is ok, parent of required field may be null
 		} catch (Exception ex) {
@@ -139,6 +160,8 @@ public class YCoreToolkit {
 	/**
 	 * Sets value to the object via set-method. Object must
 	 * have set- and get-methods in standard Java bean style for the field.
+	 * Setters are resolved only once for each bean class and field name
+	 * (see YPropertyAccessor).
 	 * 
 	 * @param obj 		the object
 	 * @param fieldName the field name in the object
@@ -148,43 +171,97 @@ public class YCoreToolkit {
 	 */
 	public static void setBeanValue(Object obj, String fieldName, 
 			Object value) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
-		PropertyUtils.setProperty(obj, fieldName, value);
+		YPropertyAccessor.getAccessor(fieldName).setValue(obj, value);
 	}	
+
+	/**
+	 * Returns value from the object with a precompiled accessor. 
+	 * Exceptions are handled as in getBeanValue(Object, String).
+	 * 
+	 * @param obj 		the object
+	 * @param accessor	the accessor of the field
+	 * @return 			the field value
+	 * @see #getBeanValue(Object, String)
+	 */
+	public static Object getBeanValue(Object obj, YPropertyAccessor accessor){
+		try {
+			return accessor.getValue(obj);
+		} catch (NestedNullException nex) {
+			return null; // this is ok, parent of required field may be null
+		} catch (Exception ex) {
+            throw new YException(ex);
+        }
+	}
 	
 	/**
 	 * Compares Collections of Java beans  If both collections contain 
 	 * the same objects in the same order, collections are considered equal.
      *
 	 * Objects in the collection are the same if the fields are the same 
-	 * (equals-method is not used). Method uses EqualsBuilder.reflectionEquals 
-	 * to check the fields. 
+	 * (equals-method is not used). The comparison is done by the 
+	 * equality engine, by default YReflectionEqualityEngine, which 
+	 * checks the fields like EqualsBuilder.reflectionEquals. 
 	 * 
 	 * @param c1 the Collection to be compared
 	 * @param c2 the Collection to be compared
 	 * @return true if Collections are considered equals
 	 * 
+	 * @see #setEqualityEngine(YIEqualityEngine)
 	 * @see org.apache.commons.lang.builder.EqualsBuilder#reflectionEquals(java.lang.Object, java.lang.Object, boolean, java.lang.Class)
 	 */
 	public static boolean equalsCollection(Collection c1, Collection c2) {
-		if (c1 == null && c2 == null) {
-			return true;
-		} else if ((c1 == null && c2 != null)
-			|| (c1 != null && c2 == null)) {
-			return false;
-		} else if (c1.size() != c2.size()){
-			return false;
-		} else {
-			Iterator it = c1.iterator();
-			Iterator it2 = c2.iterator();
-			while (it.hasNext()) {
-				Object obj1 = it.next();
-				Object obj2 = it2.next();
-				if (!EqualsBuilder.reflectionEquals(obj1, obj2, false, Object.class)) {
-					return false;
-				}
-			}
-			return true;
-        }
+		return equalityEngine.equalsCollection(c1, c2);
+	}
+	
+	/**
+	 * Returns Collator for the default locale. The Collator is created 
+	 * only when the default locale changes. Collator compare-methods 
+	 * are synchronized, so the instance may be shared.
+	 * 
+	 * @return the Collator used by LEXICAL_COMPARATOR
+	 */
+	public static synchronized Collator getCollator() {
+		Locale locale = Locale.getDefault();
+		if (collator == null || !locale.equals(collatorLocale)) {
+			collator = Collator.getInstance(locale);
+			collatorLocale = locale;
+		}
+		return collator;
+	}
+	
+	/**
+	 * For framework internal use. Returns the thread pool shared by
+	 * parallel operations of the framework (comparison and sorting of
+	 * large collections). The pool has a thread for each processor.
+	 * 
+	 * @return the pool
+	 */
+	public static synchronized ForkJoinPool getParallelPool() {
+		if (parallelPool == null) {
+			// worker threads are daemons, so the pool doesn't prevent exiting
+			parallelPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		}
+		return parallelPool;
+	}
+	
+	/**
+	 * @return the equality engine used by equalsCollection
+	 */
+	public static YIEqualityEngine getEqualityEngine() {
+		return equalityEngine;
+	}
+	
+	/**
+	 * Sets the equality engine used by equalsCollection (and change
+	 * tracking of Collection components).
+	 * 
+	 * @param engine the equality engine
+	 */
+	public static void setEqualityEngine(YIEqualityEngine engine) {
+		if (engine == null) {
+			throw new IllegalArgumentException("Equality engine cannot be null.");
+		}
+		equalityEngine = engine;
 	}
 	
 	/**
@@ -200,12 +277,30 @@ public class YCoreToolkit {
 	 * If currently investigated object is a Collection, 
 	 * equalsCollection-method is called.
 	 * 
+	 * Get-methods of each class are searched only once. If the same pair 
+	 * of objects is met again in the recursion (a cycle in the object graph), 
+	 * the pair is considered equal, the comparison is done already.
+	 * 
 	 * @param obj1 the object to be compared
 	 * @param obj2 the object to be compared
 	 * @return true if objects are considered equal
 	 */	
 	public static boolean equalsByGetters(Object obj1, Object obj2) throws IllegalArgumentException, IllegalAccessException, InvocationTargetException {
-		if (obj1 == null && obj2 == null) {
+		return equalsByGetters(obj1, obj2, new IdentityHashMap());
+	}
+	
+	/**
+	 * Compares objects by getters.
+	 * 
+	 * @param obj1		the object to be compared
+	 * @param obj2		the object to be compared
+	 * @param visited	obj1 -> obj2 for pairs being compared
+	 * @return true if objects are considered equal
+	 */
+	private static boolean equalsByGetters(Object obj1, Object obj2, IdentityHashMap visited) throws IllegalArgumentException, IllegalAccessException, InvocationTargetException {
+		if (obj1 == obj2) {
+			return true;
+		} else if (obj1 == null && obj2 == null) {
 			return true;
 		} else if ((obj1 == null && obj2 != null)
 			|| (obj1 != null && obj2 == null)) {
@@ -213,37 +308,27 @@ public class YCoreToolkit {
 		} else if (!obj1.getClass().equals(obj2.getClass())) {
 			return false;
 		} else {
+			YBeanPlan plan = YBeanPlan.getPlan(obj1.getClass());
 			// using equals-method if found in class...
-			Method equalsMethod = null;
-			try {
-				equalsMethod = obj1.getClass().getDeclaredMethod("equals", new Class[] {Object.class});
-            } catch (Exception ignored) { }
-			if (equalsMethod != null) {
+			if (plan.declaresEquals) {
 				return obj1.equals(obj2);
 			} else {
 				if (obj1 instanceof Collection) {
 					return equalsCollection((Collection) obj1, (Collection) obj2);	
 				} else {
-					Class class1 = obj1.getClass();
-					while (! class1.equals(Object.class)) {
-						Method[] methods = class1.getDeclaredMethods();
-						for (int i = 0; i < methods.length; i++) {
-							Method method = methods[i];
-							// if method is a public getter...
-							if (method.getName().indexOf("get") == 0 && 
-								method.getParameterTypes().length == 0 &&
-								method.getModifiers() == Modifier.PUBLIC) {
-							
-								Object value1 = method.invoke(obj1, EMPTY_PARAM);
-								Object value2 = method.invoke(obj2, EMPTY_PARAM);
-								
-								if (!equalsByGetters(value1, value2)) {
-									return false;
-								}
-							}
+					if (visited.get(obj1) == obj2) {
+						// cycle, these are being compared already
+						return true;
+					}
+					visited.put(obj1, obj2);
+					Method[] getters = plan.getters;
+					for (int i = 0; i < getters.length; i++) {
+						Object value1 = getters[i].invoke(obj1, EMPTY_PARAM);
+						Object value2 = getters[i].invoke(obj2, EMPTY_PARAM);
+						if (!equalsByGetters(value1, value2, visited)) {
+							return false;
 						}
-						class1 = class1.getSuperclass();
-					}    
+					}
 				}
 			}
 			return true;
@@ -278,7 +363,9 @@ public class YCoreToolkit {
     }
 	
 	/**
-	 * Finds a method of object.
+	 * Finds a method of object. The result (also the information that
+	 * method was not found) is cached for each class, method name and 
+	 * parameter types, so the class hierarchy is searched only once.
 	 * 
 	 * @param obj			the object
 	 * @param methodName	the name of the method
@@ -288,7 +375,30 @@ public class YCoreToolkit {
 	 */
 	public static Method findMethod(Object obj, String methodName, Class[] paramClasses, boolean publicOnly) {
     	if (paramClasses == null) paramClasses = EMPTY_CLASS_PARAM;
-		Class aClass = obj.getClass();
+    	MethodKey key = new MethodKey(obj.getClass(), methodName, paramClasses, publicOnly);
+    	Object method = methodCache.get(key);
+    	if (method == null) {
+    		method = searchMethod(obj.getClass(), methodName, paramClasses, publicOnly);
+    		if (method == null) {
+    			// caching also the information that method doesn't exist
+    			method = METHOD_NOT_FOUND;
+    		}
+    		methodCache.put(new MethodKey(obj.getClass(), methodName, 
+    				paramClasses.clone(), publicOnly), method);
+    	}
+    	return (method == METHOD_NOT_FOUND) ? null : (Method) method;
+	}
+	
+	/**
+	 * Searches a method from the class hierarchy via reflection.
+	 * 
+	 * @param aClass		the class of the object
+	 * @param methodName	the name of the method
+	 * @param paramClasses	the parameter types of method
+	 * @param publicOnly	if only public methods should be returned
+	 * @return				the method or null if not found
+	 */
+	private static Method searchMethod(Class aClass, String methodName, Class[] paramClasses, boolean publicOnly) {
 		// might end up in Object class if any getter doesn't match...
 		while (! aClass.equals(Object.class)) {
 			try {
@@ -322,7 +432,10 @@ public class YCoreToolkit {
    
 	
 	/**
-	 * Invokes a method in an object.
+	 * Invokes a method in an object. The method is searched like in 
+	 * findMethod. If the found method is public and has no parameters,
+	 * it is invoked via generated binding, if the class of the object 
+	 * has one.
 	 * 
 	 * @param obj 		 	the object which method is invoked
 	 * @param methodName 	the name of the method
@@ -344,6 +457,14 @@ public class YCoreToolkit {
     	if (method == null) {
     		throw new YMethodNotFoundException(obj, methodName, paramClasses );
     	} else {
+    		if (params.length == 0 && method.getModifiers() == Modifier.PUBLIC) {
+    			// the binding calls the same public method (private and 
+    			// other than plain public methods are left to reflection)
+    			YIControllerBinding binding = YBindings.getControllerBinding(obj.getClass());
+    			if (binding != null && binding.hasMethod(methodName)) {
+    				return binding.invoke(obj, methodName);
+    			}
+    		}
     		YCoreToolkit.tryAccessible(method);
     		return method.invoke(obj, params);
     	}
@@ -373,6 +494,9 @@ public class YCoreToolkit {
     /**
      * Copies an object by iterating fields recursively via
      * get- and set-methods. Object may contain also Collections.
+     * Get- and set-methods of each class are searched only once.
+     * If an object occurs several times in the object graph 
+     * (also in a cycle), it is copied only once.
      * 
      * @param obj the object to copy
      * @return the copy of the object
@@ -384,10 +508,11 @@ public class YCoreToolkit {
      * @throws YMethodNotFoundException
      */
     public static Object deepCopyObject(Object obj) throws YMethodNotFoundException, IllegalArgumentException, InstantiationException, IllegalAccessException, InvocationTargetException, NoSuchMethodException  {
+        IdentityHashMap copies = new IdentityHashMap();
         if (obj instanceof Collection) {
-            return copyCollection ((Collection) obj);
+            return copyCollection ((Collection) obj, copies);
         } else {
-            return copyContents(obj);
+            return copyContents(obj, copies);
         }
     }
     
@@ -396,15 +521,24 @@ public class YCoreToolkit {
       * get- and set-methods.
       * 
       * @param source the collection to copy
+      * @param copies source -> copy for objects copied already
       * @return the copy
       */
-    private static Collection copyCollection(Collection source) {
+    private static Collection copyCollection(Collection source, IdentityHashMap copies) {
+        if (source == null) {
+            return null;
+        }
+        Collection copy = (Collection) copies.get(source);
+        if (copy != null) {
+            return copy;
+        }
         try {
-            Collection copy = (Collection) source.getClass().newInstance();
+            copy = (Collection) source.getClass().newInstance();
+            copies.put(source, copy);
             Iterator it = source.iterator();
             while (it.hasNext()) {
                 Object obj = it.next();
-                Object copyObj = copyContents(obj);
+                Object copyObj = copyContents(obj, copies);
                 copy.add(copyObj);
             }
             return copy;
@@ -417,25 +551,27 @@ public class YCoreToolkit {
      * Copies contents of object by using get- and set-methods.
      * 
      * @param  source 	the object to copy
+     * @param  copies 	source -> copy for objects copied already
      * @return the copy
      */
-    private static Object copyContents(Object source) throws InstantiationException, YMethodNotFoundException, IllegalArgumentException, IllegalAccessException, InvocationTargetException, NoSuchMethodException {
-        Object copy = source.getClass().newInstance();
-        Method[] methods = source.getClass().getDeclaredMethods();
-        for (int i = 0; i < methods.length; i++) {
-            Method method = methods[i];
-            if (method.getName().indexOf("get") == 0 && 
-                method.getParameterTypes().length == 0 &&
-				method.getModifiers() == Modifier.PUBLIC) {
-            	Object value = method.invoke(source, EMPTY_PARAM);
-    			Class valueClass = method.getReturnType();
-                String fieldName = method.getName().substring(3);
-                if (valueClass.equals(Collection.class)) {
-                    Collection copiedCollection = copyCollection((Collection) value);
-                    setBeanValue(copy, fieldName, copiedCollection);
-                } else {
-                    setBeanValue(copy, fieldName, value);
-                }
+    private static Object copyContents(Object source, IdentityHashMap copies) throws InstantiationException, YMethodNotFoundException, IllegalArgumentException, IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+        Object copy = copies.get(source);
+        if (copy != null) {
+            return copy;
+        }
+        copy = source.getClass().newInstance();
+        copies.put(source, copy);
+        YBeanPlan.Property[] properties = YBeanPlan.getPlan(source.getClass()).copyProperties;
+        for (int i = 0; i < properties.length; i++) {
+            YBeanPlan.Property property = properties[i];
+            Object value = property.getter.invoke(source, EMPTY_PARAM);
+            if (property.collection) {
+                value = copyCollection((Collection) value, copies);
+            }
+            if (property.setter != null) {
+                property.setter.invoke(copy, new Object[] {value});
+            } else {
+                setBeanValue(copy, property.fieldName, value);
             }
         }
         return copy;
@@ -457,4 +593,38 @@ public class YCoreToolkit {
     }
 
 	
-}
\ No newline at end of file
+    /**
+     * The cache key for findMethod.
+     */
+    private static class MethodKey {
+    	private Class aClass;
+    	private String methodName;
+    	private Class[] paramClasses;
+    	private boolean publicOnly;
+    	private int hash;
+    	
+    	MethodKey(Class aClass, String methodName, Class[] paramClasses, boolean publicOnly) {
+    		this.aClass = aClass;
+    		this.methodName = methodName;
+    		this.paramClasses = paramClasses;
+    		this.publicOnly = publicOnly;
+    		this.hash = aClass.hashCode() * 31 + methodName.hashCode() 
+    				+ Arrays.hashCode(paramClasses) + (publicOnly ? 1 : 0);
+    	}
+    	
+    	public int hashCode() {
+    		return hash;
+    	}
+    	
+    	public boolean equals(Object obj) {
+    		if (!(obj instanceof MethodKey)) {
+    			return false;
+    		}
+    		MethodKey key = (MethodKey) obj;
+    		return aClass == key.aClass && publicOnly == key.publicOnly
+    			&& methodName.equals(key.methodName) 
+    			&& Arrays.equals(paramClasses, key.paramClasses);
+    	}
+    }
+	
+}
@@ -0,0 +1,36 @@
+/* Copyright (C) 2005 Ministry of Agriculture and Forestry of Finland */
+package fi.mmm.yhteinen.swing.core.tools;
+
+import java.util.Collection;
+
+/**
+ * The equality engine compares Java beans and Collections of Java beans
+ * for change tracking (YTable, YPlainList and YDualList equalsModel).
+ * The engine can be replaced with YCoreToolkit.setEqualityEngine.
+ *
+ * @author Tomi Tuomainen
+ * @see YCoreToolkit#equalsCollection(Collection, Collection)
+ * @see YReflectionEqualityEngine
+ */
+public interface YIEqualityEngine {
+
+	/**
+	 * Compares two objects (rows of a Collection).
+	 *
+	 * @param obj1	the object to be compared
+	 * @param obj2	the object to be compared
+	 * @return 		true if objects are considered equal
+	 */
+	public boolean equalsObject(Object obj1, Object obj2);
+
+	/**
+	 * Compares Collections. Collections are equal if they contain
+	 * equal objects in the same order.
+	 *
+	 * @param c1	the Collection to be compared
+	 * @param c2	the Collection to be compared
+	 * @return 		true if Collections are considered equal
+	 */
+	public boolean equalsCollection(Collection c1, Collection c2);
+
+}
@@ -0,0 +1,22 @@
+/* Copyright (C) 2005 Ministry of Agriculture and Forestry of Finland */
+package fi.mmm.yhteinen.swing.core.tools;
+
+/**
+ * A Java bean that keeps track of it's own version. The version should
+ * be changed in every set-method, and it must be copied when
+ * the bean is cloned.
+ * <p>
+ * YReflectionEqualityEngine considers two beans of the same class
+ * with the same version equal without comparing their fields.
+ *
+ * @author Tomi Tuomainen
+ * @see YReflectionEqualityEngine
+ */
+public interface YIVersionedBean {
+
+	/**
+	 * @return the version of the bean
+	 */
+	public long getBeanVersion();
+
+}
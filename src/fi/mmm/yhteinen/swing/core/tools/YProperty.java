@@ -1,22 +1,94 @@
 /* Copyright (C) 2005 Ministry of Agriculture and Forestry of Finland */
 package fi.mmm.yhteinen.swing.core.tools;
 
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import fi.mmm.yhteinen.swing.core.YIComponent;
 
 /**
- * Class for storing YIComponent properties. 
- * 
+ * Class for storing YIComponent properties.
+ * <p>
+ * Properties used by the framework (MVC_NAME, CONTROLLER, MODEL etc.) are
+ * stored in an array instead of the hash table, which is used only
+ * for other (application) properties. All Map methods (including 
+ * the default methods of Map interface) access the properties via
+ * get, put, remove and entrySet of this class.
+ * <p>
+ * Framework internal properties (ORIGINAL_MODEL_VALUE and 
+ * ORIGINAL_EXTENDED_MODEL_VALUE) are available only via get, put, 
+ * containsKey and remove. They are not included in entrySet, keySet, 
+ * values, size, equals and clone, and clear doesn't remove them.
+ * <p>
+ * Note: YProperty extends AbstractMap instead of HashMap (as in 
+ * earlier versions). Use it via the Map interface, it cannot be 
+ * cast to HashMap. The serialized form is not compatible with
+ * earlier versions.
+ *
  * @see YIComponent
  * @author Tomi Tuomainen
  */
-public class YProperty extends HashMap {
+public class YProperty extends AbstractMap implements Cloneable, Serializable {
+
+	/**
+	 * For framework internal use. The property for the original model
+	 * value stored by change tracking. 
+	 */
+	public static final String ORIGINAL_MODEL_VALUE = "originalModelValue";
 	
+	/**
+	 * For framework internal use. The property for original extended 
+	 * field values stored by change tracking. 
+	 */
+	public static final String ORIGINAL_EXTENDED_MODEL_VALUE = "originalExtendedModelValue";
+
+	// keys stored in slots:
+	private static final Object[] SLOT_KEYS = new Object[] {
+		YIComponent.MVC_NAME,
+		YIComponent.CONTROLLER,
+		YIComponent.MODEL,
+		YIComponent.READ_ONLY,
+		YIComponent.CHECK_CHANGES,
+		YIComponent.COMPONENT_LIST,
+		ORIGINAL_MODEL_VALUE,
+		ORIGINAL_EXTENDED_MODEL_VALUE
+	};
+	private static final int[] SLOT_HASHES = new int[SLOT_KEYS.length];
+	static {
+		for (int i=0; i < SLOT_KEYS.length; i++) {
+			SLOT_HASHES[i] = SLOT_KEYS[i].hashCode();
+		}
+	}
+	private static final int MVC_NAME_SLOT = 0;
+	// bits of the slots hidden from Map views:
+	private static final int INTERNAL_SLOTS = 
+		(1 << getSlot(ORIGINAL_MODEL_VALUE)) | (1 << getSlot(ORIGINAL_EXTENDED_MODEL_VALUE));
+
+	// values of SLOT_KEYS, allocated when the first slot is set
+	private Object[] slots;
+	// bit i is set, if slot i has a value (value may be null)
+	private int slotsSet;
+	// other properties, allocated when the first one is set
+	private HashMap map;
+	// counters incremented when MVC_NAME changes, null if none
+	private transient MvcNameCounter[] mvcNameCounters;
+	// components of a view cached by YUIToolkit (not a property)
+	private transient Object viewComponents;
+
 	public YProperty() {
-		
+
 	}
-	
+
 	/**
 	 * @param name  the name of the property
 	 * @param value	the value to be stored
@@ -24,6 +96,444 @@ public class YProperty extends HashMap {
 	public YProperty (String name, Object value) {
 		put(name, value);
 	}
-	
-	
+
+	/**
+	 * Adds a counter, which is incremented whenever MVC_NAME of
+	 * this component is set or removed. Framework uses counters to
+	 * detect when cached MVC name lookups of a view must be rebuilt.
+	 * The same counter is added only once.
+	 *
+	 * @param counter	the counter
+	 */
+	public synchronized void addMvcNameCounter(MvcNameCounter counter) {
+		if (mvcNameCounters == null) {
+			mvcNameCounters = new MvcNameCounter[] {counter};
+			return;
+		}
+		for (int i=0; i < mvcNameCounters.length; i++) {
+			if (mvcNameCounters[i] == counter) {
+				return;
+			}
+		}
+		MvcNameCounter[] counters = new MvcNameCounter[mvcNameCounters.length + 1];
+		System.arraycopy(mvcNameCounters, 0, counters, 0, mvcNameCounters.length);
+		counters[mvcNameCounters.length] = counter;
+		mvcNameCounters = counters;
+	}
+
+	/**
+	 * @return	the view components cached by YUIToolkit
+	 */
+	Object getViewComponents() {
+		return viewComponents;
+	}
+
+	/**
+	 * @param viewComponents	the view components cached by YUIToolkit
+	 */
+	void setViewComponents(Object viewComponents) {
+		this.viewComponents = viewComponents;
+	}
+
+	private void mvcNameChanged(Object mvcName) {
+		MvcNameCounter[] counters = mvcNameCounters;
+		if (counters != null) {
+			for (int i=0; i < counters.length; i++) {
+				counters[i].increment((String) mvcName);
+			}
+		}
+	}
+
+	/**
+	 * @param key	the property key
+	 * @return		the slot of the key or -1 if key is not stored in a slot
+	 */
+	private static int getSlot(Object key) {
+		// framework uses the constants, so usually the same instance is found...
+		for (int i=0; i < SLOT_KEYS.length; i++) {
+			if (SLOT_KEYS[i] == key) {
+				return i;
+			}
+		}
+		if (key instanceof String) {
+			int hash = key.hashCode();
+			for (int i=0; i < SLOT_KEYS.length; i++) {
+				if (SLOT_HASHES[i] == hash && SLOT_KEYS[i].equals(key)) {
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	private boolean isSet(int slot) {
+		return (slotsSet & (1 << slot)) != 0;
+	}
+
+	private static boolean isInternal(int slot) {
+		return (INTERNAL_SLOTS & (1 << slot)) != 0;
+	}
+
+	/*
+	 *  (non-Javadoc)
+	 * @see java.util.Map#get(java.lang.Object)
+	 */
+	public Object get(Object key) {
+		int slot = getSlot(key);
+		if (slot >= 0) {
+			return isSet(slot) ? slots[slot] : null;
+		}
+		return (map == null) ? null : map.get(key);
+	}
+
+	/*
+	 *  (non-Javadoc)
+	 * @see java.util.Map#containsKey(java.lang.Object)
+	 */
+	public boolean containsKey(Object key) {
+		int slot = getSlot(key);
+		if (slot >= 0) {
+			return isSet(slot);
+		}
+		return map != null && map.containsKey(key);
+	}
+
+	/*
+	 *  (non-Javadoc)
+	 * @see java.util.Map#put(java.lang.Object, java.lang.Object)
+	 */
+	public Object put(Object key, Object value) {
+		int slot = getSlot(key);
+		if (slot < 0) {
+			if (map == null) {
+				map = new HashMap();
+			}
+			return map.put(key, value);
+		}
+		if (slots == null) {
+			slots = new Object[SLOT_KEYS.length];
+		}
+		Object old = isSet(slot) ? slots[slot] : null;
+		slots[slot] = value;
+		slotsSet |= (1 << slot);
+		if (slot == MVC_NAME_SLOT && (old == null ? value != null : !old.equals(value))) {
+			mvcNameChanged(value);
+		}
+		return old;
+	}
+
+	/*
+	 *  (non-Javadoc)
+	 * @see java.util.Map#putAll(java.util.Map)
+	 */
+	public void putAll(Map map) {
+		Iterator it = map.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry entry = (Map.Entry) it.next();
+			put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/*
+	 *  (non-Javadoc)
+	 * @see java.util.Map#remove(java.lang.Object)
+	 */
+	public Object remove(Object key) {
+		int slot = getSlot(key);
+		if (slot < 0) {
+			return (map == null) ? null : map.remove(key);
+		}
+		if (!isSet(slot)) {
+			return null;
+		}
+		Object old = slots[slot];
+		slots[slot] = null;
+		slotsSet &= ~(1 << slot);
+		if (old != null && slot == MVC_NAME_SLOT) {
+			mvcNameChanged(null);
+		}
+		return old;
+	}
+
+	/*
+	 *  (non-Javadoc)
+	 * @see java.util.Map#clear()
+	 */
+	public void clear() {
+		if (isSet(MVC_NAME_SLOT)) {
+			mvcNameChanged(null);
+		}
+		// internal properties are kept
+		for (int i=0; i < SLOT_KEYS.length; i++) {
+			if (!isInternal(i) && isSet(i)) {
+				slots[i] = null;
+			}
+		}
+		slotsSet &= INTERNAL_SLOTS;
+		map = null;
+	}
+
+	/*
+	 *  (non-Javadoc)
+	 * @see java.util.Map#size()
+	 */
+	public int size() {
+		return Integer.bitCount(slotsSet & ~INTERNAL_SLOTS) + ((map == null) ? 0 : map.size());
+	}
+
+	/*
+	 *  (non-Javadoc)
+	 * @see java.util.Map#isEmpty()
+	 */
+	public boolean isEmpty() {
+		return (slotsSet & ~INTERNAL_SLOTS) == 0 && (map == null || map.isEmpty());
+	}
+
+	/*
+	 *  (non-Javadoc)
+	 * @see java.util.Map#containsValue(java.lang.Object)
+	 */
+	public boolean containsValue(Object value) {
+		for (int i=0; i < SLOT_KEYS.length; i++) {
+			if (!isInternal(i) && isSet(i) && (value == null ? slots[i] == null : value.equals(slots[i]))) {
+				return true;
+			}
+		}
+		return map != null && map.containsValue(value);
+	}
+
+	/*
+	 *  (non-Javadoc)
+	 * @see java.lang.Object#clone()
+	 */
+	public Object clone() {
+		// counters, cached components and internal properties are not copied to the clone
+		YProperty clone = new YProperty();
+		clone.putAll(this);
+		return clone;
+	}
+
+	/*
+	 *  (non-Javadoc)
+	 * @see java.util.Map#entrySet()
+	 */
+	public Set entrySet() {
+		return new AbstractSet() {
+			public Iterator iterator() {
+				return new EntryIterator();
+			}
+			public int size() {
+				return YProperty.this.size();
+			}
+			public void clear() {
+				YProperty.this.clear();
+			}
+		};
+	}
+
+	/*
+	 *  (non-Javadoc)
+	 * @see java.util.Map#keySet()
+	 */
+	public Set keySet() {
+		return new AbstractSet() {
+			public Iterator iterator() {
+				final Iterator it = new EntryIterator();
+				return new Iterator() {
+					public boolean hasNext() {
+						return it.hasNext();
+					}
+					public Object next() {
+						return ((Map.Entry) it.next()).getKey();
+					}
+					public void remove() {
+						it.remove();
+					}
+				};
+			}
+			public int size() {
+				return YProperty.this.size();
+			}
+			public boolean contains(Object key) {
+				return containsKey(key);
+			}
+			public boolean remove(Object key) {
+				boolean found = containsKey(key);
+				YProperty.this.remove(key);
+				return found;
+			}
+			public void clear() {
+				YProperty.this.clear();
+			}
+		};
+	}
+
+	/*
+	 *  (non-Javadoc)
+	 * @see java.util.Map#values()
+	 */
+	public Collection values() {
+		return new AbstractCollection() {
+			public Iterator iterator() {
+				final Iterator it = new EntryIterator();
+				return new Iterator() {
+					public boolean hasNext() {
+						return it.hasNext();
+					}
+					public Object next() {
+						return ((Map.Entry) it.next()).getValue();
+					}
+					public void remove() {
+						it.remove();
+					}
+				};
+			}
+			public int size() {
+				return YProperty.this.size();
+			}
+			public void clear() {
+				YProperty.this.clear();
+			}
+		};
+	}
+
+	/**
+	 * Counter of MVC_NAME changes, which may be shared by several components
+	 * (for example components of a view).
+	 *
+	 * @see YProperty#addMvcNameCounter(MvcNameCounter)
+	 */
+	public static class MvcNameCounter {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		/**
+		 * @return	the number of MVC_NAME changes
+		 */
+		public int getCount() {
+			return count.get();
+		}
+
+		void increment(String mvcName) {
+			count.incrementAndGet();
+			mvcNameChanged(mvcName);
+		}
+
+		/**
+		 * Called after the count has been incremented. This implementation
+		 * does nothing, subclasses may override this to react immediately.
+		 *
+		 * @param mvcName	the new MVC_NAME, null if MVC_NAME was removed
+		 */
+		protected void mvcNameChanged(String mvcName) {
+
+		}
+	}
+
+	/**
+	 * Iterates slot entries (except internal properties) first and 
+	 * then entries of the hash table.
+	 */
+	private class EntryIterator implements Iterator {
+
+		private int nextSlot = -1;
+		private int lastSlot = -1;
+		private Iterator mapIterator;
+		private boolean lastFromMap = false;
+
+		EntryIterator() {
+			nextSlot = findSlot(0);
+		}
+
+		private int findSlot(int from) {
+			for (int i=from; i < SLOT_KEYS.length; i++) {
+				if (isSet(i) && !isInternal(i)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		private Iterator getMapIterator() {
+			if (mapIterator == null) {
+				mapIterator = (map == null) ? Collections.EMPTY_SET.iterator() : map.entrySet().iterator();
+			}
+			return mapIterator;
+		}
+
+		public boolean hasNext() {
+			return nextSlot >= 0 || getMapIterator().hasNext();
+		}
+
+		public Object next() {
+			if (nextSlot >= 0) {
+				lastSlot = nextSlot;
+				lastFromMap = false;
+				nextSlot = findSlot(nextSlot + 1);
+				return new SlotEntry(lastSlot);
+			}
+			if (!getMapIterator().hasNext()) {
+				throw new NoSuchElementException();
+			}
+			lastSlot = -1;
+			lastFromMap = true;
+			return getMapIterator().next();
+		}
+
+		public void remove() {
+			if (lastFromMap) {
+				getMapIterator().remove();
+				lastFromMap = false;
+			} else if (lastSlot >= 0) {
+				YProperty.this.remove(SLOT_KEYS[lastSlot]);
+				lastSlot = -1;
+			} else {
+				throw new IllegalStateException();
+			}
+		}
+	}
+
+	/**
+	 * Map entry for a slot.
+	 */
+	private class SlotEntry implements Map.Entry {
+
+		private int slot;
+
+		SlotEntry(int slot) {
+			this.slot = slot;
+		}
+
+		public Object getKey() {
+			return SLOT_KEYS[slot];
+		}
+
+		public Object getValue() {
+			return isSet(slot) ? slots[slot] : null;
+		}
+
+		public Object setValue(Object value) {
+			return put(SLOT_KEYS[slot], value);
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Map.Entry)) {
+				return false;
+			}
+			Map.Entry entry = (Map.Entry) obj;
+			Object value = getValue();
+			return getKey().equals(entry.getKey()) &&
+				(value == null ? entry.getValue() == null : value.equals(entry.getValue()));
+		}
+
+		public int hashCode() {
+			Object value = getValue();
+			return getKey().hashCode() ^ (value == null ? 0 : value.hashCode());
+		}
+
+		public String toString() {
+			return getKey() + "=" + getValue();
+		}
+	}
+
 }
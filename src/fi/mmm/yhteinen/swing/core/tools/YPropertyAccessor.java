@@ -0,0 +1,649 @@
+/* Copyright (C) 2005 Ministry of Agriculture and Forestry of Finland */
+package fi.mmm.yhteinen.swing.core.tools;
+
+import java.beans.BeanInfo;
+import java.beans.IndexedPropertyDescriptor;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.beanutils.PropertyUtils;
+
+/**
+ * Compiled accessor for a bean property path (MVC_NAME). The path
+ * is parsed only once, and getter and setter methods of each path
+ * segment are resolved once per bean class and cached. Nested
+ * (<code>a.b.c</code>), indexed (<code>a[3]</code>) and mapped
+ * (<code>a(key)</code>) notations are supported in the same way as
+ * in commons-beanutils PropertyUtils.
+ * <p>
+ * If a segment cannot be resolved with standard Java bean
+ * conventions (for example DynaBeans), the rest of the path is
+ * delegated to PropertyUtils, so the behaviour stays the same.
+ * <p>
+ * Accessors are immutable. Accessors for derived paths (for example
+ * <code>orders[3].lines</code> of <code>orders</code>) are created
+ * with getElement and getChild, which reuse the parsed segments
+ * of this accessor instead of parsing a new path string.
+ * <p>
+ * This class is meant primarily for framework internal use,
+ * use YCoreToolkit getBeanValue and setBeanValue instead.
+ *
+ * @author Tomi Tuomainen
+ * @see YCoreToolkit#getBeanValue(Object, String)
+ * @see YCoreToolkit#setBeanValue(Object, String, Object)
+ */
+public class YPropertyAccessor {
+
+    // the maximum number of cached paths, the cache is cleared when full
+    private static final int MAX_CACHED_PATHS = 4096;
+
+    private static final Map accessors = new ConcurrentHashMap();
+
+    // Class -> Map of PropertyDescriptors by property name
+    private static final Map descriptors = new ConcurrentHashMap();
+
+    private static final Object[] EMPTY_PARAM = new Object[0];
+
+    // the maximum number of cached derived accessors per accessor (cleared when full)
+    private static final int MAX_DERIVED = 256;
+
+    private final String path;
+    private final Segment[] segments;
+    // start position of each segment in the path
+    private final int[] starts;
+
+    // Integer -> accessor of getElement, String -> accessor of getChild
+    private final Map elements = new ConcurrentHashMap();
+    private final Map children = new ConcurrentHashMap();
+
+    /**
+     * Returns accessor for the given property path. Accessors are
+     * cached, so the path is parsed only once.
+     *
+     * @param path  the property path, for example <code>customer.address.street</code>
+     * @return      the accessor
+     */
+    public static YPropertyAccessor getAccessor(String path) {
+        YPropertyAccessor accessor = (YPropertyAccessor) accessors.get(path);
+        if (accessor == null) {
+            accessor = new YPropertyAccessor(path);
+            if (accessors.size() >= MAX_CACHED_PATHS) {
+                // used paths are cached again
+                accessors.clear();
+            }
+            accessors.put(path, accessor);
+        }
+        return accessor;
+    }
+
+    /**
+     * Clears all cached accessors and class metadata. This
+     * may be called if bean classes are reloaded at runtime.
+     */
+    public static void clearCache() {
+        accessors.clear();
+        descriptors.clear();
+    }
+
+    /**
+     * @param path the property path
+     */
+    private YPropertyAccessor(String path) {
+        if (path == null) {
+            throw new IllegalArgumentException("No name specified");
+        }
+        this.path = path;
+        List startList = new ArrayList();
+        this.segments = parse(path, startList);
+        this.starts = new int[startList.size()];
+        for (int i=0; i < starts.length; i++) {
+            starts[i] = ((Integer) startList.get(i)).intValue();
+        }
+    }
+
+    /**
+     * Creates accessor for a derived path.
+     *
+     * @param path      the property path
+     * @param segments  the segments of the path
+     * @param starts    the start positions of the segments
+     */
+    private YPropertyAccessor(String path, Segment[] segments, int[] starts) {
+        this.path = path;
+        this.segments = segments;
+        this.starts = starts;
+    }
+
+    /**
+     * Splits the path into segments. A dot inside mapped key
+     * parentheses is not considered to be a nested delimiter.
+     *
+     * @param path      the path to parse
+     * @param starts    list for the start positions (Integers) of the segments
+     * @return          the segments
+     */
+    private static Segment[] parse(String path, List starts) {
+        List result = new ArrayList();
+        int start = 0;
+        while (start <= path.length()) {
+            int mapped = path.indexOf('(', start);
+            int nested = path.indexOf('.', start);
+            if (mapped >= 0 && nested > mapped) {
+                int mappedEnd = path.indexOf(')', mapped);
+                if (mappedEnd >= 0) {
+                    nested = path.indexOf('.', mappedEnd);
+                }
+            }
+            if (nested < 0) {
+                nested = path.length();
+            }
+            result.add(new Segment(path.substring(start, nested)));
+            starts.add(new Integer(start));
+            start = nested + 1;
+        }
+        return (Segment[]) result.toArray(new Segment[result.size()]);
+    }
+
+    /**
+     * @return the property path of this accessor
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Returns accessor for an element of this indexed property, for
+     * example <code>orders[3]</code> for <code>orders</code>. Segments
+     * of this accessor are reused and the result is cached.
+     *
+     * @param index the index of the element
+     * @return      the accessor
+     * @throws IllegalArgumentException if the last segment is already indexed or mapped
+     */
+    public YPropertyAccessor getElement(int index) {
+        Integer key = new Integer(index);
+        YPropertyAccessor accessor = (YPropertyAccessor) elements.get(key);
+        if (accessor == null) {
+            int last = segments.length - 1;
+            if (segments[last].index >= 0 || segments[last].key != null) {
+                throw new IllegalArgumentException("Property " + path + " is already indexed");
+            }
+            String suffix = "[" + index + "]";
+            Segment[] elementSegments = segments.clone();
+            elementSegments[last] = new Segment(segments[last].text + suffix);
+            accessor = derive(path + suffix, elementSegments, starts);
+            if (elements.size() >= MAX_DERIVED) {
+                elements.clear();
+            }
+            elements.put(key, accessor);
+        }
+        return accessor;
+    }
+
+    /**
+     * Returns accessor for a nested property of this property, for
+     * example <code>orders[3].lines</code> for <code>orders[3]</code>.
+     * Segments of this accessor are reused and the result is cached.
+     *
+     * @param name  the name of the nested property (a single segment)
+     * @return      the accessor
+     */
+    public YPropertyAccessor getChild(String name) {
+        YPropertyAccessor accessor = (YPropertyAccessor) children.get(name);
+        if (accessor == null) {
+            Segment[] childSegments = new Segment[segments.length + 1];
+            System.arraycopy(segments, 0, childSegments, 0, segments.length);
+            childSegments[segments.length] = new Segment(name);
+            int[] childStarts = new int[starts.length + 1];
+            System.arraycopy(starts, 0, childStarts, 0, starts.length);
+            childStarts[starts.length] = path.length() + 1;
+            accessor = derive(path + "." + name, childSegments, childStarts);
+            if (children.size() >= MAX_DERIVED) {
+                children.clear();
+            }
+            children.put(name, accessor);
+        }
+        return accessor;
+    }
+
+    /**
+     * Returns the cached accessor of the path, or creates a new one 
+     * with the given segments. Derived accessors are cached only by 
+     * the parent accessor, so that paths with indexes (like 
+     * <code>orders[12345].lines</code>) don't fill the global cache.
+     */
+    private static YPropertyAccessor derive(String path, Segment[] segments, int[] starts) {
+        YPropertyAccessor accessor = (YPropertyAccessor) accessors.get(path);
+        if (accessor == null) {
+            accessor = new YPropertyAccessor(path, segments, starts);
+        }
+        return accessor;
+    }
+
+    /**
+     * @return the number of segments in the path
+     */
+    public int getSegmentCount() {
+        return segments.length;
+    }
+
+    /**
+     * @param i the segment number
+     * @return  the property name of the segment, for example
+     *          <code>orders</code> for <code>orders[3]</code>
+     */
+    public String getSegmentName(int i) {
+        return segments[i].name;
+    }
+
+    /**
+     * @param i the segment number
+     * @return  the index of the segment or -1 if segment is not indexed
+     */
+    public int getSegmentIndex(int i) {
+        return segments[i].index;
+    }
+
+    /**
+     * @param i the segment number
+     * @return  the map key of the segment or null if segment is not mapped
+     */
+    public String getSegmentKey(int i) {
+        return segments[i].key;
+    }
+
+    /**
+     * Reads the property value from the given bean.
+     * If a nested object in the path is null, null is returned.
+     *
+     * @param bean  the bean, may not be null
+     * @return      the property value
+     *
+     * @throws IllegalAccessException       exception in method call via reflection
+     * @throws InvocationTargetException    exception in method call via reflection
+     * @throws NoSuchMethodException        if the path doesn't match bean getters
+     */
+    public Object getValue(Object bean) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+        if (bean == null) {
+            throw new IllegalArgumentException("No bean specified");
+        }
+        Object current = bean;
+        for (int i=0; i < segments.length; i++) {
+            if (current == null) {
+                return null; // parent of required field may be null
+            }
+            Segment segment = segments[i];
+            Reader reader = segment.getReader(current.getClass());
+            if (reader == null) {
+                // not a standard Java bean, letting PropertyUtils handle the rest:
+                return getWithPropertyUtils(current, remainder(i));
+            }
+            current = reader.read(current);
+        }
+        return current;
+    }
+
+    /**
+     * Sets the property value into the given bean.
+     *
+     * @param bean  the bean, may not be null
+     * @param value the value to set
+     *
+     * @throws IllegalAccessException       exception in method call via reflection
+     * @throws InvocationTargetException    exception in method call via reflection
+     * @throws NoSuchMethodException        if the path doesn't match bean getters and setters
+     */
+    public void setValue(Object bean, Object value) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+        if (bean == null) {
+            throw new IllegalArgumentException("No bean specified");
+        }
+        Object current = bean;
+        int last = segments.length - 1;
+        for (int i=0; i < last; i++) {
+            Segment segment = segments[i];
+            Reader reader = segment.getReader(current.getClass());
+            Object next = null;
+            if (reader != null) {
+                next = reader.read(current);
+            }
+            if (next == null) {
+                // PropertyUtils handles the rest (and throws the appropriate exception)
+                PropertyUtils.setProperty(current, remainder(i), value);
+                return;
+            }
+            current = next;
+        }
+        Segment segment = segments[last];
+        Writer writer = segment.getWriter(current.getClass());
+        if (writer == null) {
+            PropertyUtils.setProperty(current, remainder(last), value);
+        } else {
+            writer.write(current, value);
+        }
+    }
+
+    /**
+     * @param i the segment number
+     * @return  the path starting from the segment (for PropertyUtils)
+     */
+    private String remainder(int i) {
+        return path.substring(starts[i]);
+    }
+
+    private static Object getWithPropertyUtils(Object bean, String path) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+        try {
+            return PropertyUtils.getProperty(bean, path);
+        } catch (org.apache.commons.beanutils.NestedNullException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns property descriptor for the given class and property.
+     *
+     * @param aClass    the bean class
+     * @param name      the property name
+     * @return          the descriptor or null if not found
+     */
+    private static PropertyDescriptor getDescriptor(Class aClass, String name) {
+        Map classDescriptors = (Map) descriptors.get(aClass);
+        if (classDescriptors == null) {
+            classDescriptors = new HashMap();
+            try {
+                BeanInfo info = Introspector.getBeanInfo(aClass);
+                PropertyDescriptor[] pds = info.getPropertyDescriptors();
+                for (int i=0; i < pds.length; i++) {
+                    classDescriptors.put(pds[i].getName(), pds[i]);
+                }
+            } catch (IntrospectionException ignored) {
+                // no descriptors, PropertyUtils will report the problem
+            }
+            descriptors.put(aClass, classDescriptors);
+        }
+        return (PropertyDescriptor) classDescriptors.get(name);
+    }
+
+    /**
+     * Makes method accessible for invocation. If the method
+     * is in a non-public class and cannot be set accessible, null
+     * is returned (PropertyUtils is used instead).
+     *
+     * @param method    the method
+     * @return          the method or null if it cannot be used
+     */
+    private static Method accessible(Method method) {
+        if (method == null) {
+            return null;
+        }
+        if (!Modifier.isPublic(method.getModifiers())) {
+            return null;
+        }
+        if (!Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+            try {
+                method.setAccessible(true);
+            } catch (RuntimeException ex) {
+                return null;
+            }
+        }
+        return method;
+    }
+
+    /**
+     * One segment of the path, for example <code>customers[2]</code>.
+     */
+    private static class Segment {
+
+        private String name;
+        private int index = -1;
+        private String key = null;
+        private String text;
+
+        // Class -> Reader/Writer, NONE if not resolvable
+        private Map readers = new ConcurrentHashMap();
+        private Map writers = new ConcurrentHashMap();
+
+        Segment(String text) {
+            this.text = text;
+            int mapped = text.indexOf('(');
+            int indexed = text.indexOf('[');
+            if (mapped >= 0) {
+                name = text.substring(0, mapped);
+                int end = text.indexOf(')', mapped);
+                key = (end >= 0) ? text.substring(mapped+1, end) : text.substring(mapped+1);
+            } else if (indexed >= 0) {
+                name = text.substring(0, indexed);
+                int end = text.indexOf(']', indexed);
+                try {
+                    index = Integer.parseInt(
+                            (end >= 0) ? text.substring(indexed+1, end) : text.substring(indexed+1));
+                } catch (NumberFormatException ex) {
+                    name = null; // invalid index, PropertyUtils will report the problem
+                }
+            } else {
+                name = text;
+            }
+        }
+
+        Reader getReader(Class aClass) {
+            Object reader = readers.get(aClass);
+            if (reader == null) {
+                reader = resolveReader(aClass);
+                readers.put(aClass, reader == null ? NONE : reader);
+            }
+            return (reader == NONE) ? null : (Reader) reader;
+        }
+
+        Writer getWriter(Class aClass) {
+            Object writer = writers.get(aClass);
+            if (writer == null) {
+                writer = resolveWriter(aClass);
+                writers.put(aClass, writer == null ? NONE : writer);
+            }
+            return (writer == NONE) ? null : (Writer) writer;
+        }
+
+        private Reader resolveReader(Class aClass) {
+            if (Map.class.isAssignableFrom(aClass)) {
+                return new Reader(Reader.MAP, null, text);
+            }
+            if (name == null) {
+                return null;
+            }
+            PropertyDescriptor pd = getDescriptor(aClass, name);
+            if (key != null) {
+                try {
+                    Method method = accessible(aClass.getMethod(
+                            "get" + YCoreToolkit.firstUpper(name), new Class[] {String.class}));
+                    if (method != null) {
+                        return new Reader(Reader.MAPPED_METHOD, method, key);
+                    }
+                } catch (NoSuchMethodException ignored) {
+                    // trying a getter returning Map...
+                }
+                if (pd != null && accessible(pd.getReadMethod()) != null) {
+                    return new Reader(Reader.MAPPED_VALUE, pd.getReadMethod(), key);
+                }
+                return null;
+            }
+            if (pd == null) {
+                return null;
+            }
+            if (index >= 0) {
+                if (pd instanceof IndexedPropertyDescriptor) {
+                    Method method = accessible(((IndexedPropertyDescriptor) pd).getIndexedReadMethod());
+                    if (method != null) {
+                        return new Reader(Reader.INDEXED_METHOD, method, new Integer(index));
+                    }
+                }
+                Method method = accessible(pd.getReadMethod());
+                return (method == null) ? null : new Reader(Reader.INDEXED_VALUE, method, new Integer(index));
+            }
+            Method method = accessible(pd.getReadMethod());
+            return (method == null) ? null : new Reader(Reader.SIMPLE, method, null);
+        }
+
+        private Writer resolveWriter(Class aClass) {
+            if (Map.class.isAssignableFrom(aClass)) {
+                return new Writer(Writer.MAP, null, null, text);
+            }
+            if (name == null) {
+                return null;
+            }
+            PropertyDescriptor pd = getDescriptor(aClass, name);
+            if (key != null) {
+                try {
+                    Method method = accessible(aClass.getMethod(
+                            "set" + YCoreToolkit.firstUpper(name), new Class[] {String.class, Object.class}));
+                    if (method != null) {
+                        return new Writer(Writer.MAPPED_METHOD, method, null, key);
+                    }
+                } catch (NoSuchMethodException ignored) {
+                    // trying a getter returning Map...
+                }
+                if (pd != null && accessible(pd.getReadMethod()) != null) {
+                    return new Writer(Writer.MAPPED_VALUE, null, pd.getReadMethod(), key);
+                }
+                return null;
+            }
+            if (pd == null) {
+                return null;
+            }
+            if (index >= 0) {
+                if (pd instanceof IndexedPropertyDescriptor) {
+                    Method method = accessible(((IndexedPropertyDescriptor) pd).getIndexedWriteMethod());
+                    if (method != null) {
+                        return new Writer(Writer.INDEXED_METHOD, method, null, new Integer(index));
+                    }
+                }
+                Method method = accessible(pd.getReadMethod());
+                return (method == null) ? null : new Writer(Writer.INDEXED_VALUE, null, method, new Integer(index));
+            }
+            Method method = accessible(pd.getWriteMethod());
+            return (method == null) ? null : new Writer(Writer.SIMPLE, method, null, null);
+        }
+    }
+
+    // marker for segments that cannot be resolved for a class
+    private static final Object NONE = new Object();
+
+    /**
+     * Reads a single segment value from a bean.
+     */
+    private static class Reader {
+        static final int SIMPLE = 0;
+        static final int INDEXED_METHOD = 1;
+        static final int INDEXED_VALUE = 2;
+        static final int MAPPED_METHOD = 3;
+        static final int MAPPED_VALUE = 4;
+        static final int MAP = 5;
+
+        private int type;
+        private Method method;
+        private Object argument;
+
+        Reader(int type, Method method, Object argument) {
+            this.type = type;
+            this.method = method;
+            this.argument = argument;
+        }
+
+        Object read(Object bean) throws IllegalAccessException, InvocationTargetException {
+            switch (type) {
+                case SIMPLE:
+                    return method.invoke(bean, EMPTY_PARAM);
+                case INDEXED_METHOD:
+                case MAPPED_METHOD:
+                    return method.invoke(bean, new Object[] {argument});
+                case INDEXED_VALUE:
+                    return getIndexed(method.invoke(bean, EMPTY_PARAM), ((Integer) argument).intValue());
+                case MAPPED_VALUE:
+                    Object map = method.invoke(bean, EMPTY_PARAM);
+                    return (map instanceof Map) ? ((Map) map).get(argument) : null;
+                default:
+                    return ((Map) bean).get(argument);
+            }
+        }
+
+        private static Object getIndexed(Object value, int index) {
+            if (value == null) {
+                return null;
+            } else if (value.getClass().isArray()) {
+                return Array.get(value, index);
+            } else if (value instanceof List) {
+                return ((List) value).get(index);
+            } else {
+                throw new IllegalArgumentException("Property is not indexed");
+            }
+        }
+    }
+
+    /**
+     * Writes a single segment value into a bean.
+     */
+    private static class Writer {
+        static final int SIMPLE = 0;
+        static final int INDEXED_METHOD = 1;
+        static final int INDEXED_VALUE = 2;
+        static final int MAPPED_METHOD = 3;
+        static final int MAPPED_VALUE = 4;
+        static final int MAP = 5;
+
+        private int type;
+        private Method writeMethod;
+        private Method readMethod;
+        private Object argument;
+
+        Writer(int type, Method writeMethod, Method readMethod, Object argument) {
+            this.type = type;
+            this.writeMethod = writeMethod;
+            this.readMethod = readMethod;
+            this.argument = argument;
+        }
+
+        void write(Object bean, Object value) throws IllegalAccessException, InvocationTargetException {
+            switch (type) {
+                case SIMPLE:
+                    writeMethod.invoke(bean, new Object[] {value});
+                    break;
+                case INDEXED_METHOD:
+                case MAPPED_METHOD:
+                    writeMethod.invoke(bean, new Object[] {argument, value});
+                    break;
+                case INDEXED_VALUE:
+                    setIndexed(readMethod.invoke(bean, EMPTY_PARAM), ((Integer) argument).intValue(), value);
+                    break;
+                case MAPPED_VALUE:
+                    Object map = readMethod.invoke(bean, EMPTY_PARAM);
+                    if (map instanceof Map) {
+                        ((Map) map).put(argument, value);
+                    }
+                    break;
+                default:
+                    ((Map) bean).put(argument, value);
+            }
+        }
+
+        private static void setIndexed(Object target, int index, Object value) {
+            if (target == null) {
+                throw new IllegalArgumentException("Null indexed property");
+            } else if (target.getClass().isArray()) {
+                Array.set(target, index, value);
+            } else if (target instanceof List) {
+                ((List) target).set(index, value);
+            } else {
+                throw new IllegalArgumentException("Property is not indexed");
+            }
+        }
+    }
+
+}
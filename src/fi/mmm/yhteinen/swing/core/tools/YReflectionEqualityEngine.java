@@ -0,0 +1,288 @@
+/* Copyright (C) 2005 Ministry of Agriculture and Forestry of Finland */
+package fi.mmm.yhteinen.swing.core.tools;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+
+import fi.mmm.yhteinen.swing.core.error.YException;
+
+/**
+ * The default equality engine. Objects are compared field by field
+ * like in EqualsBuilder.reflectionEquals (equals-method of the objects
+ * is not used, transient and static fields are ignored), but the fields
+ * of each class are searched only once and cached.
+ * <p>
+ * The same object instance is always equal to itself, and YIVersionedBeans
+ * with the same version are equal without comparing the fields.
+ * Collections larger than parallelThreshold are compared in several
+ * threads.
+ *
+ * @author Tomi Tuomainen
+ * @see YCoreToolkit#setEqualityEngine(YIEqualityEngine)
+ */
+public class YReflectionEqualityEngine implements YIEqualityEngine {
+
+    // the number of rows, after which collections are compared in parallel
+    private static final int DEFAULT_PARALLEL_THRESHOLD = 20000;
+
+    // Class -> Field[] (or NO_PLAN if fields cannot be accessed)
+    private static final Map plans = new ConcurrentHashMap();
+    private static final Field[] NO_PLAN = new Field[0];
+    // Class -> Boolean, true if the class overrides hashCode
+    private static final Map hashCodeClasses = new ConcurrentHashMap();
+
+    private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+    /*
+     *  (non-Javadoc)
+     * @see fi.mmm.yhteinen.swing.core.tools.YIEqualityEngine#equalsCollection(java.util.Collection, java.util.Collection)
+     */
+    public boolean equalsCollection(Collection c1, Collection c2) {
+        if (c1 == c2) {
+            return true;
+        } else if (c1 == null || c2 == null) {
+            return false;
+        } else if (c1.size() != c2.size()) {
+            return false;
+        } else if (c1.size() >= parallelThreshold && getParallelism() > 1) {
+            return equalsParallel(c1.toArray(), c2.toArray());
+        } else {
+            Iterator it = c1.iterator();
+            Iterator it2 = c2.iterator();
+            while (it.hasNext()) {
+                if (!equalsObject(it.next(), it2.next())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /*
+     *  (non-Javadoc)
+     * @see fi.mmm.yhteinen.swing.core.tools.YIEqualityEngine#equalsObject(java.lang.Object, java.lang.Object)
+     */
+    public boolean equalsObject(Object obj1, Object obj2) {
+        if (obj1 == obj2) {
+            return true;
+        } else if (obj1 == null || obj2 == null) {
+            return false;
+        }
+        Class aClass = obj1.getClass();
+        if (aClass != obj2.getClass()) {
+            // different classes in the same hierarchy are rare, using EqualsBuilder...
+            return EqualsBuilder.reflectionEquals(obj1, obj2, false, Object.class);
+        }
+        if (obj1 instanceof YIVersionedBean &&
+                ((YIVersionedBean) obj1).getBeanVersion() == ((YIVersionedBean) obj2).getBeanVersion()) {
+            return true;
+        }
+        Field[] fields = getFields(aClass);
+        if (fields == NO_PLAN) {
+            return EqualsBuilder.reflectionEquals(obj1, obj2, false, Object.class);
+        }
+        try {
+            for (int i=0; i < fields.length; i++) {
+                if (!equalsValue(fields[i].get(obj1), fields[i].get(obj2))) {
+                    return false;
+                }
+            }
+        } catch (IllegalAccessException ex) {
+            throw new YException(ex);
+        }
+        return true;
+    }
+
+    /**
+     * Compares field values like EqualsBuilder.append.
+     */
+    private static boolean equalsValue(Object value1, Object value2) {
+        if (value1 == value2) {
+            return true;
+        } else if (value1 == null || value2 == null) {
+            return false;
+        } else if (value1.getClass().isArray()) {
+            return new EqualsBuilder().append(value1, value2).isEquals();
+        } else {
+            return value1.equals(value2);
+        }
+    }
+
+    /**
+     * Calculates hash code of an object from the same fields that are
+     * compared in equalsObject. Field values which class doesn't override
+     * hashCode (nested beans) and elements of Collections are hashed
+     * recursively, so that changes of nested beans change the hash code too.
+     *
+     * @param obj   the object, may be null
+     * @return      the hash code
+     */
+    static int hashObject(Object obj) {
+        return hashObject(obj, new IdentityHashMap());
+    }
+
+    private static int hashObject(Object obj, IdentityHashMap visited) {
+        if (obj == null || visited.put(obj, obj) != null) {
+            return 0;
+        }
+        Field[] fields = getFields(obj.getClass());
+        if (fields == NO_PLAN) {
+            return HashCodeBuilder.reflectionHashCode(obj);
+        }
+        int hash = 17;
+        try {
+            for (int i=0; i < fields.length; i++) {
+                hash = hash * 37 + hashValue(fields[i].get(obj), visited);
+            }
+        } catch (IllegalAccessException ex) {
+            throw new YException(ex);
+        }
+        return hash;
+    }
+
+    private static int hashValue(Object value, IdentityHashMap visited) {
+        if (value == null) {
+            return 0;
+        } else if (value.getClass().isArray()) {
+            return new HashCodeBuilder().append(value).toHashCode();
+        } else if (value instanceof Collection) {
+            int hash = 1;
+            Iterator it = ((Collection) value).iterator();
+            while (it.hasNext()) {
+                hash = hash * 31 + hashValue(it.next(), visited);
+            }
+            return hash;
+        } else if (overridesHashCode(value.getClass())) {
+            return value.hashCode();
+        } else {
+            return hashObject(value, visited);
+        }
+    }
+
+    private static boolean overridesHashCode(Class aClass) {
+        Boolean overrides = (Boolean) hashCodeClasses.get(aClass);
+        if (overrides == null) {
+            try {
+                overrides = Boolean.valueOf(aClass.getMethod("hashCode", (Class[]) null).getDeclaringClass() != Object.class);
+            } catch (NoSuchMethodException ex) {
+                overrides = Boolean.TRUE;
+            }
+            hashCodeClasses.put(aClass, overrides);
+        }
+        return overrides.booleanValue();
+    }
+
+    /**
+     * Returns the fields compared for the class: fields of the class
+     * and it's super classes, excluding static, transient and
+     * synthetic fields (like EqualsBuilder).
+     *
+     * @param aClass    the class
+     * @return          the accessible fields or NO_PLAN
+     */
+    private static Field[] getFields(Class aClass) {
+        Field[] fields = (Field[]) plans.get(aClass);
+        if (fields == null) {
+            ArrayList list = new ArrayList();
+            try {
+                for (Class current = aClass; current != null && current != Object.class;
+                        current = current.getSuperclass()) {
+                    Field[] declared = current.getDeclaredFields();
+                    for (int i=0; i < declared.length; i++) {
+                        Field field = declared[i];
+                        if (field.getName().indexOf('$') == -1 &&
+                                !Modifier.isTransient(field.getModifiers()) &&
+                                !Modifier.isStatic(field.getModifiers())) {
+                            field.setAccessible(true);
+                            list.add(field);
+                        }
+                    }
+                }
+                fields = (Field[]) list.toArray(new Field[list.size()]);
+            } catch (SecurityException ex) {
+                // SecurityManager prevents access, EqualsBuilder decides what to do
+                fields = NO_PLAN;
+            }
+            plans.put(aClass, fields);
+        }
+        return fields;
+    }
+
+    /**
+     * Compares rows in several threads. Each thread compares a part
+     * of rows, and all threads stop when a difference is found.
+     */
+    private boolean equalsParallel(final Object[] rows1, final Object[] rows2) {
+        final AtomicBoolean different = new AtomicBoolean(false);
+        int parts = getParallelism();
+        int partSize = (rows1.length + parts - 1) / parts;
+        List tasks = new ArrayList(parts);
+        for (int start = 0; start < rows1.length; start += partSize) {
+            final int from = start;
+            final int to = Math.min(start + partSize, rows1.length);
+            tasks.add(new Callable() {
+                public Object call() {
+                    for (int i=from; i < to && !different.get(); i++) {
+                        if (!equalsObject(rows1[i], rows2[i])) {
+                            different.set(true);
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        List futures = YCoreToolkit.getParallelPool().invokeAll(tasks);
+        try {
+            for (int i=0; i < futures.size(); i++) {
+                ((Future) futures.get(i)).get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new YException(ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new YException(ex.getCause());
+        }
+        return !different.get();
+    }
+
+    private static int getParallelism() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * @return the number of rows, after which collections
+     *         are compared in parallel
+     */
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * Sets the number of rows, after which collections are compared
+     * in several threads. Use Integer.MAX_VALUE to disable
+     * parallel comparison.
+     *
+     * @param parallelThreshold the number of rows
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+}
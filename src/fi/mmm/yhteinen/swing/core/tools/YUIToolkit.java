@@ -8,9 +8,13 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.swing.JDialog;
 import javax.swing.JFrame;
@@ -24,6 +28,8 @@ import fi.mmm.yhteinen.swing.core.YIControllerComponent;
 import fi.mmm.yhteinen.swing.core.YIModelComponent;
 import fi.mmm.yhteinen.swing.core.YISharedModelComponent;
 import fi.mmm.yhteinen.swing.core.YModel;
+import fi.mmm.yhteinen.swing.core.binding.YBindings;
+import fi.mmm.yhteinen.swing.core.binding.YIViewBinding;
 import fi.mmm.yhteinen.swing.core.component.YTabbedPane;
 import fi.mmm.yhteinen.swing.core.error.YException;
 import fi.mmm.yhteinen.swing.core.error.YInvalidMVCNameException;
@@ -42,7 +48,22 @@ public class YUIToolkit {
      * An empty parameter for any method invoked via reflection.
      */
     private static final Object[] EMPTY_PARAM = new Object[0];
-
+    
+    // the maximum number of field names in method name cache
+    private static final int MAX_CACHED_METHOD_NAMES = 4096;
+    
+    // field name -> (suffix -> method name) for createMVCMethodName
+    private static final Map methodNames = new ConcurrentHashMap();
+    
+    // view class -> getters of view components
+    private static final Map componentGetters = new ConcurrentHashMap();
+    
+    // model class -> (MVC_NAME -> Boolean) for checkGetMethodNames
+    private static final Map checkedNames = new ConcurrentHashMap();
+    
+    // field name -> MVC_NAME guessed by guessNested
+    private static final Map guessedNames = new ConcurrentHashMap();
+    
     
     /**
      * Finds the parent window of given Component.
@@ -153,9 +174,27 @@ public class YUIToolkit {
 	 * @throws YInvalidMVCNameException
 	 * 				if YIModelComponent of the view has MVC-name
 	 * 				that doesn't match any getter in view model
+	 * @see #checkGetMethodNames(Class, YIComponent)
 	 */
 	public static void checkGetMethodNames(Object model, YIComponent view) throws YInvalidMVCNameException {
-		ArrayList comps = YUIToolkit.getViewComponents(view);
+		checkGetMethodNames(model.getClass(), view);
+	}
+	
+	/**
+	 * Checks that a model class has appropriate get-methods
+	 * corresponding to the MVC names of view components. The result 
+	 * is cached for each model class and MVC name, so getters are 
+	 * searched only once even if the same view is set up repeatedly.
+	 * 
+	 * @param modelClass	the view model class
+	 * @param view			the view
+	 * @throws YInvalidMVCNameException
+	 * 				if YIModelComponent of the view has MVC-name
+	 * 				that doesn't match any getter in view model
+	 * @see #checkGetMethodNames(Object, YIComponent)
+	 */
+	public static void checkGetMethodNames(Class modelClass, YIComponent view) throws YInvalidMVCNameException {
+		List comps = YUIToolkit.getViewComponentList(view);
 		Iterator it = comps.iterator();
 		String falseNames = "";
 		while (it.hasNext()) {
@@ -163,35 +202,8 @@ public class YUIToolkit {
 			// checking only components which are connected to the model:
 			if (comp instanceof YIModelComponent) {
 				String mvcName = (String) ((YIComponent) comp).getYProperty().get(YIComponent.MVC_NAME);
-				if (mvcName != null) {
-					try {
-						String nameToCheck = null;
-						int i = mvcName.indexOf('(');
-						if (i == -1) {
-							i = mvcName.indexOf('[');
-						}
-						if (i != -1) {
-							// not checking indexed or mapped parts of mvc name...
-							nameToCheck = mvcName.substring(0, i);
-						} else {
-							nameToCheck = mvcName;
-						}
-						
-						Class modelClass = model.getClass();
-						int pos = nameToCheck.indexOf('.');
-						// checking nested getters for parent objects:
-						while (pos > -1) {
-							String parentName = nameToCheck.substring(0, pos);
-							nameToCheck = nameToCheck.substring(pos+1);
-							String methodName = "get" + YCoreToolkit.firstUpper(parentName);
-							Method method = modelClass.getMethod(methodName, null);
-							modelClass = method.getReturnType();
-							pos = nameToCheck.indexOf('.');
-						}
-					} catch (Exception e) {
-						falseNames += mvcName + " ";
-						
-					}
+				if (mvcName != null && !isValidGetMethodName(modelClass, mvcName)) {
+					falseNames += mvcName + " ";
 				}
 			}
 		}
@@ -200,6 +212,114 @@ public class YUIToolkit {
 		}
 	}
 	
+	/**
+	 * Checks getters of the given views in a background thread. The 
+	 * results are cached, so checking the views is fast when they are 
+	 * set up later. This may be called at application start for all 
+	 * view/model pairs. MVC names are read from the views in the calling
+	 * thread. Invalid MVC names are logged as error.
+	 * 
+	 * @param views			the views
+	 * @param modelClasses	the model classes of the views (in the same order)
+	 */
+	public static void prewarmGetMethodNames(YIComponent[] views, final Class[] modelClasses) {
+		final String[][] mvcNames = new String[views.length][];
+		final String[] viewNames = new String[views.length];
+		for (int i=0; i < views.length; i++) {
+			List names = new ArrayList();
+			Iterator it = getViewComponentList(views[i]).iterator();
+			while (it.hasNext()) {
+				Object comp = it.next();
+				if (comp instanceof YIModelComponent) {
+					Object mvcName = ((YIComponent) comp).getYProperty().get(YIComponent.MVC_NAME);
+					if (mvcName != null) {
+						names.add(mvcName);
+					}
+				}
+			}
+			mvcNames[i] = (String[]) names.toArray(new String[names.size()]);
+			viewNames[i] = views[i].getClass() + "";
+		}
+		Thread thread = new Thread("YUIToolkit.prewarmGetMethodNames") {
+			public void run() {
+				for (int i=0; i < mvcNames.length; i++) {
+					String falseNames = "";
+					for (int j=0; j < mvcNames[i].length; j++) {
+						if (!isValidGetMethodName(modelClasses[i], mvcNames[i][j])) {
+							falseNames += mvcNames[i][j] + " ";
+						}
+					}
+					if (falseNames.length() > 0) {
+						logger.error(new YInvalidMVCNameException(falseNames, viewNames[i]));
+					}
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+	
+	/**
+	 * Checks (cached) if the model class has getters for 
+	 * the nested parts of the MVC name.
+	 * 
+	 * @param modelClass	the model class
+	 * @param mvcName		the MVC name
+	 * @return				true if getters were found
+	 */
+	private static boolean isValidGetMethodName(Class modelClass, String mvcName) {
+		Map classNames = (Map) checkedNames.get(modelClass);
+		if (classNames == null) {
+			classNames = new ConcurrentHashMap();
+			checkedNames.put(modelClass, classNames);
+		}
+		Boolean valid = (Boolean) classNames.get(mvcName);
+		if (valid == null) {
+			valid = Boolean.valueOf(findGetMethods(modelClass, mvcName));
+			if (classNames.size() < MAX_CACHED_METHOD_NAMES) {
+				classNames.put(mvcName, valid);
+			}
+		}
+		return valid.booleanValue();
+	}
+	
+	/**
+	 * @param modelClass	the model class
+	 * @param mvcName		the MVC name
+	 * @return				true if the model class has getters for nested
+	 * 						parts of the MVC name
+	 */
+	private static boolean findGetMethods(Class modelClass, String mvcName) {
+		try {
+			String nameToCheck = null;
+			int i = mvcName.indexOf('(');
+			if (i == -1) {
+				i = mvcName.indexOf('[');
+			}
+			if (i != -1) {
+				// not checking indexed or mapped parts of mvc name...
+				nameToCheck = mvcName.substring(0, i);
+			} else {
+				nameToCheck = mvcName;
+			}
+			
+			int pos = nameToCheck.indexOf('.');
+			// checking nested getters for parent objects:
+			while (pos > -1) {
+				String parentName = nameToCheck.substring(0, pos);
+				nameToCheck = nameToCheck.substring(pos+1);
+				String methodName = "get" + YCoreToolkit.firstUpper(parentName);
+				Method method = modelClass.getMethod(methodName, null);
+				modelClass = method.getReturnType();
+				pos = nameToCheck.indexOf('.');
+			}
+			return true;
+		} catch (Exception e) {
+			return false;
+		}
+	}
+	
 	/**
 	 * Sets up MVC structure. Sets object references that YFramework
 	 * requires between model, view and controller. In other words,
@@ -209,6 +329,7 @@ public class YUIToolkit {
 	 * 
 	 * The method checks getters in the model if <code>checkGetMethodNames</code>
 	 * is true. Possible <code>YInvalidMVCNameException</code> is logged as error.
+	 * The check result is cached for each model class and MVC name.
      * 
      *  @deprecated use YController setUpMVC-method
      *  
@@ -287,7 +408,7 @@ public class YUIToolkit {
      */
     public static void setViewEnabled(YIComponent view, boolean enabled, 
                 Class[] compClassesToIgnore, JTextComponent[] compsToIgnore) {
-        ArrayList comps = getViewComponents(view);
+        List comps = getViewComponentList(view);
         Iterator it = comps.iterator();
         while (it.hasNext()) {
             Object obj = it.next();
@@ -345,7 +466,7 @@ public class YUIToolkit {
 	 */
 	public static void setViewEditable(YIComponent view, boolean editable, 
                 Class[] compClassesToIgnore, JTextComponent[] compsToIgnore) {
-		ArrayList comps = getViewComponents(view);
+		List comps = getViewComponentList(view);
 		Iterator it = comps.iterator();
 		while (it.hasNext()) {
 			Object obj = it.next();
@@ -459,32 +580,59 @@ public class YUIToolkit {
        * @param comp             the component
        * @param suffix           the suffix for the method
        * @param fieldName        MVC-name or YIExtendedModelComponent field name
-       * @return                 the method name
+       * @return                 the method name (cached for each field name and suffix)
        */ 
     public static String createMVCMethodName(YIComponent comp, String fieldName, String suffix) {
     	if (fieldName == null)  {
     		return null;
     	} else {
-    		char[] name = fieldName.toCharArray();
-    		StringBuffer result = new StringBuffer();
-    		boolean nextUpper = false;
-    		for (int i=0; i < name.length; i++) {
-    			char ch = name[i];
-    			// if character is accepted in the method name...
-    			if (Character.isLetterOrDigit(name[i])) {
-    				if (nextUpper) {
-    					ch = Character.toUpperCase(ch);
-    					nextUpper = false;
-    				}
-    				result.append(ch);
-    			} else {
-    				// not accepted character...
-    				nextUpper = true;
+    		// names are cached by field name and suffix:
+    		Map suffixNames = (Map) methodNames.get(fieldName);
+    		if (suffixNames == null) {
+    			suffixNames = new ConcurrentHashMap(4);
+    			if (methodNames.size() < MAX_CACHED_METHOD_NAMES) {
+    				methodNames.put(fieldName, suffixNames);
+    			}
+    		}
+    		if (suffix == null) {
+    			return buildMVCMethodName(fieldName, suffix);
+    		}
+    		String methodName = (String) suffixNames.get(suffix);
+    		if (methodName == null) {
+    			methodName = buildMVCMethodName(fieldName, suffix);
+    			suffixNames.put(suffix, methodName);
+    		}
+    		return methodName;
+    	}
+    }
+    
+    /**
+     * Builds a method name for controller event method.
+     * 
+     * @param fieldName        MVC-name or YIExtendedModelComponent field name
+     * @param suffix           the suffix for the method
+     * @return                 the method name
+     */
+    private static String buildMVCMethodName(String fieldName, String suffix) {
+    	char[] name = fieldName.toCharArray();
+    	StringBuffer result = new StringBuffer();
+    	boolean nextUpper = false;
+    	for (int i=0; i < name.length; i++) {
+    		char ch = name[i];
+    		// if character is accepted in the method name...
+    		if (Character.isLetterOrDigit(name[i])) {
+    			if (nextUpper) {
+    				ch = Character.toUpperCase(ch);
+    				nextUpper = false;
     			}
+    			result.append(ch);
+    		} else {
+    			// not accepted character...
+    			nextUpper = true;
     		}
-    		String s = (result + suffix);
-    		return s;
     	}
+    	String s = (result + suffix);
+    	return s;
     }
     
     /**
@@ -541,53 +689,147 @@ public class YUIToolkit {
      * or YIComponent array, that list is returned. Otherwise,
      * method checks view and it's super classes and returns all
      * YIComponents found via get-methods. 
+     * <p>
+     * The returned list is a copy that may be modified. Use 
+     * getViewComponentList when the list is only read.
      *  
      * @param view	the view holding the components
      * @return		components of the view
+     * @see #getViewComponentList(YIComponent)
      */
     public static ArrayList getViewComponents(YIComponent view) {
-    	ArrayList result = new ArrayList();
+    	return new ArrayList(getViewComponentList(view));
+    }
+    
+    /**
+     * Returns components of a view, like getViewComponents, but the returned 
+     * list is shared and cannot be modified. 
+     * <p>
+     * The components are cached for the view. If view has COMPONENT_LIST property, 
+     * a copy of that list is cached, and copied again if COMPONENT_LIST is replaced
+     * or it's size changes. Otherwise, get-methods of the view class are searched only 
+     * once for each class. If the view class has a binding generated by YBindingProcessor, 
+     * the getters are invoked without reflection. The cache is cleared when view
+     * or model of the controller is set. If a view replaces its components at 
+     * other times, invalidateViewComponents must be called after that.
+     * 
+     * @param view	the view holding the components
+     * @return		the read-only list of view components
+     * @see #invalidateViewComponents(YIComponent)
+     */
+    public static List getViewComponentList(YIComponent view) {
     	// checking if view is using YProperty COMPONENT_LIST...
     	Object componentList = view.getYProperty().get(YIComponent.COMPONENT_LIST);
-    	if (componentList != null) {
-    		if (componentList instanceof Collection) {
-    			return new ArrayList((Collection)componentList);
-    		} else if (componentList instanceof YIComponent[]) {
-    			YIComponent[] comps = (YIComponent[]) componentList;
-    			for (int i = 0; i < comps.length; i++) {
-    				result.add(comps[i]);
+    	ViewComponents cached = (ViewComponents) view.getYProperty().getViewComponents();
+    	if (cached == null || !cached.isValid(componentList)) {
+    		List result;
+    		if (componentList != null) {
+    			// copying, so the application may change COMPONENT_LIST while framework iterates the list
+    			if (componentList instanceof Collection) {
+    				result = new ArrayList((Collection)componentList);
+    			} else if (componentList instanceof YIComponent[]) {
+    				result = new ArrayList(Arrays.asList((YIComponent[]) componentList));
+    			} else {
+    				throw new YException("View " + view.getClass() + " has COMPONENT_LIST " + componentList.getClass() + ". " 
+    						+ "COMPONENT_LIST must be Collection or array of YIComponents. ");
     			}
     		} else {
-    			throw new YException("View " + view.getClass() + " has COMPONENT_LIST " + componentList.getClass() + ". " 
-    					+ "COMPONENT_LIST must be Collection or array of YIComponents. ");
+    			YIViewBinding binding = YBindings.getViewBinding(view.getClass());
+    			if (binding != null) {
+    				// using getters of generated binding...
+    				result = binding.getComponents(view);
+    			} else {
+    				// no COMPONENT_LIST specified, invoking getters found via reflection...
+    				Method[] getters = getComponentGetters(view.getClass());
+    				result = new ArrayList(getters.length);
+    				for (int i = 0; i < getters.length; i++) {
+    					try {
+    						Object obj  = getters[i].invoke(view, EMPTY_PARAM);
+    						if (obj instanceof YIComponent) {
+    							result.add(obj);
+    						}
+    					} catch (Exception e) {
+    						throw new YException(e);
+    					}
+    				}
+    			}
     		}
-    	} else {
-    		// no COMPONENT_LIST specified, investigating getters via reflection...
-    		Class viewClass = view.getClass();
+    		cached = new ViewComponents(componentList, Collections.unmodifiableList(result));
+    		view.getYProperty().setViewComponents(cached);
+    	}
+    	return cached.components;
+    }
+    
+    /**
+     * Cached components of a view.
+     */
+    private static class ViewComponents {
+    	// COMPONENT_LIST the components were copied from, null for getters
+    	private Object source;
+    	private int sourceSize;
+    	private List components;
+    	
+    	ViewComponents(Object source, List components) {
+    		this.source = source;
+    		this.sourceSize = getSize(source);
+    		this.components = components;
+    	}
+    	
+    	boolean isValid(Object componentList) {
+    		return componentList == source && getSize(componentList) == sourceSize;
+    	}
+    	
+    	private static int getSize(Object componentList) {
+    		if (componentList instanceof Collection) {
+    			return ((Collection) componentList).size();
+    		} else if (componentList instanceof Object[]) {
+    			return ((Object[]) componentList).length;
+    		}
+    		return 0;
+    	}
+    }
+    
+    /**
+     * Clears cached components of the view. This should be called, if 
+     * components returned by get-methods of the view are replaced at runtime,
+     * or if COMPONENT_LIST is modified without changing it's size.
+     * 
+     * @param view	the view which components have changed
+     */
+    public static void invalidateViewComponents(YIComponent view) {
+    	view.getYProperty().setViewComponents(null);
+    }
+    
+    /**
+     * Returns public get-methods returning YIComponent in given view 
+     * class and it's super classes. Methods are cached for each class. 
+     * 
+     * @param viewClass	the view class
+     * @return			the getters of view components
+     */
+    private static Method[] getComponentGetters(Class viewClass) {
+    	Method[] getters = (Method[]) componentGetters.get(viewClass);
+    	if (getters == null) {
+    		ArrayList result = new ArrayList();
+    		Class aClass = viewClass;
     		// while class object is instanceof YIComponent...
-    		while (YIComponent.class.isAssignableFrom(viewClass)) {
-    			
-    			Method[] methods = viewClass.getDeclaredMethods();
+    		while (YIComponent.class.isAssignableFrom(aClass)) {
+    			Method[] methods = aClass.getDeclaredMethods();
     			for (int i = 0; i < methods.length; i++) {
     				Method method = methods[i];
     				if (method.getName().indexOf("get") == 0 && 
     						method.getParameterTypes().length == 0 &&
 							method.getModifiers() == Modifier.PUBLIC &&
                             YIComponent.class.isAssignableFrom(method.getReturnType())) {
-    					try {
-    						Object obj  = method.invoke(view, EMPTY_PARAM);
-    						if (obj instanceof YIComponent) {
-    							result.add(obj);
-    						}
-    					} catch (Exception e) {
-    						throw new YException(e);
-    					}
+    					result.add(method);
     				}
     			}
-				viewClass = viewClass.getSuperclass();
+    			aClass = aClass.getSuperclass();
     		}
+    		getters = (Method[]) result.toArray(new Method[result.size()]);
+    		componentGetters.put(viewClass, getters);
     	}
-    	return result;
+    	return getters;
     }
 	
 	/**
@@ -667,19 +909,39 @@ public class YUIToolkit {
 	 * Handles conversion of a field name into MVC_NAME. This method
 	 * implements "nested field names guessing" 
 	 * (upper case characters will be converted to nested bean notations 
-	 * and digits will be converted to array notations)
+	 * and digits will be converted to array notations). Results
+	 * are cached by field name.
 	 * 
 	 * @param mvcName	the name to be converted
 	 * @return			the name with nested notations
 	 */
 	private static String guessNested(String mvcName) {
+		String guessed = (String) guessedNames.get(mvcName);
+		if (guessed == null) {
+			guessed = convertNested(mvcName);
+			if (guessedNames.size() < MAX_CACHED_METHOD_NAMES) {
+				guessedNames.put(mvcName, guessed);
+			}
+		}
+		return guessed;
+	}
+
+	/**
+	 * Converts a field name into nested MVC_NAME.
+	 * 
+	 * @param mvcName	the name to be converted
+	 * @return			the name with nested notations
+	 * @see #guessNested(String)
+	 */
+	private static String convertNested(String mvcName) {
 		StringBuffer result = new StringBuffer(mvcName.length());
 		char[] source = mvcName.toCharArray();
 		for (int i =0; i < source.length; i++) {
 			char ch = source[i];
 			if (Character.isUpperCase(ch)) {
 				// customerName -> customer.name
-				result.append("." + Character.toLowerCase(ch));
+				result.append('.');
+				result.append(Character.toLowerCase(ch));
 			} else if (Character.isDigit(ch)) {
 				// customers12Name -> customers[12].name
 				result.append('[');